@@ -63,6 +63,7 @@ import marla.ide.latex.LatexExporter;
 import marla.ide.problem.MarlaException;
 import marla.ide.operation.Operation;
 import marla.ide.operation.OperationInfoRequiredException;
+import marla.ide.operation.OperationScheduler;
 import org.jdom.Document;
 import org.jdom.output.Format;
 import org.jdom.output.XMLOutputter;
@@ -103,9 +104,9 @@ public class Domain
 	/** The logger holds all caught exceptions for recording in the log file.*/
 	public static final Queue<Throwable> logger = new ArrayDeque<Throwable>(5);
 	/** The extensions file filter for CSV files.*/
-	protected ExtensionFileFilter marlaFilter = new ExtensionFileFilter("maRla IDE Project Files (.marla)", new String[]
+	protected ExtensionFileFilter marlaFilter = new ExtensionFileFilter("maRla IDE Project Files (.marla, .marlab)", new String[]
 			{
-				"MARLA"
+				"MARLA", "MARLAB"
 			});
 	/** The extensions file filter for PDF files.*/
 	protected ExtensionFileFilter pdfFilter = new ExtensionFileFilter("PDF Files (.pdf)", new String[]
@@ -1017,9 +1018,9 @@ public class Domain
 					file = new File(viewPanel.fileChooserDialog.getSelectedFile().toString() + ".marla");
 				}
 				// ensure the file is a valid marla file
-				if(!file.toString().toLowerCase().endsWith(".marla"))
+				if(!file.toString().toLowerCase().endsWith(".marla") && !file.toString().toLowerCase().endsWith(".marlab"))
 				{
-					Domain.showWarningDialog(Domain.getTopWindow(), "The extension for the file must be .marla.", "Invalid Extension");
+					Domain.showWarningDialog(Domain.getTopWindow(), "The extension for the file must be .marla or .marlab.", "Invalid Extension");
 					viewPanel.fileChooserDialog.setSelectedFile(new File(viewPanel.fileChooserDialog.getSelectedFile().toString().substring(0, viewPanel.fileChooserDialog.getSelectedFile().toString().lastIndexOf(".")) + ".marla"));
 					response = viewPanel.fileChooserDialog.showSaveDialog(Domain.getTopWindow());
 					continue;
@@ -1229,6 +1230,7 @@ public class Domain
 								// Ensure all operations have been fulfilled, info wise
 								for(int i = 0; i < problem.getDataCount(); i++)
 								{
+									OperationScheduler.recompute(problem.getData(i));
 									List<Operation> ops = problem.getData(i).getAllLeafOperations();
 									for(Operation op : ops)
 									{
@@ -1363,6 +1365,7 @@ public class Domain
 								// Ensure all operations have been fulfilled, info wise
 								for(int i = 0; i < problem.getDataCount(); i++)
 								{
+									OperationScheduler.recompute(problem.getData(i));
 									List<Operation> ops = problem.getData(i).getAllLeafOperations();
 									for(Operation op : ops)
 									{
@@ -1464,9 +1467,9 @@ public class Domain
 					response = viewPanel.fileChooserDialog.showOpenDialog(Domain.getTopWindow());
 					continue;
 				}
-				if(!file.toString().toLowerCase().endsWith(".marla"))
+				if(!file.toString().toLowerCase().endsWith(".marla") && !file.toString().toLowerCase().endsWith(".marlab"))
 				{
-					Domain.showWarningDialog(Domain.getTopWindow(), "The extension for the file must be .marla.", "Invalid Extension");
+					Domain.showWarningDialog(Domain.getTopWindow(), "The extension for the file must be .marla or .marlab.", "Invalid Extension");
 					viewPanel.fileChooserDialog.setSelectedFile(new File(viewPanel.fileChooserDialog.getSelectedFile().toString().substring(0, viewPanel.fileChooserDialog.getSelectedFile().toString().lastIndexOf(".")) + ".marla"));
 					response = viewPanel.fileChooserDialog.showOpenDialog(Domain.getTopWindow());
 					continue;
@@ -33,8 +33,10 @@ import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
+import marla.ide.operation.OperationXML;
 import marla.ide.problem.MarlaException;
 import marla.ide.problem.Problem;
+import marla.ide.r.RProcessorPool;
 import marla.ide.resource.Configuration;
 import marla.ide.resource.Configuration.ConfigType;
 import marla.ide.resource.Updater;
@@ -158,6 +160,10 @@ public class MainFrame extends JFrame
 					Domain.showWarningDialog(Domain.getTopWindow(), ex.getMessage(), Domain.prettyExceptionDetails(ex), "Load Error");
 				}
 
+				// Get R running and the operations' libraries loaded while the
+				// user looks around, rather than on their first operation
+				warmUpR();
+
 				viewPanel.initLoading = false;
 				viewPanel.newButton.setEnabled(true);
 				viewPanel.openButton.setEnabled(true);
@@ -201,7 +207,7 @@ public class MainFrame extends JFrame
 					public void run()
 					{
 						// If the final argument is a save file, open it right now
-						if(args.length != 0 && args[args.length - 1].endsWith(".marla"))
+						if(args.length != 0 && (args[args.length - 1].endsWith(".marla") || args[args.length - 1].endsWith(".marlab")))
 						{
 							try
 							{
@@ -225,6 +231,33 @@ public class MainFrame extends JFrame
 		progressFrame.setLocationRelativeTo(this);
 	}
 
+	/**
+	 * Starts R and loads the libraries the operations need on a background
+	 * thread, noting in the workspace status once R is ready.
+	 */
+	private void warmUpR()
+	{
+		Thread warmUp = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					RProcessorPool.getInstance().warmUp(OperationXML.getRequiredLibraries());
+					viewPanel.domain.backgroundThread.addStatus("R is ready");
+				}
+				catch(MarlaException ex)
+				{
+					// R will be started again, and the error shown, when an operation needs it
+					Domain.logger.add(ex);
+				}
+			}
+		}, "R Warm-up");
+		warmUp.setDaemon(true);
+		warmUp.start();
+	}
+
 	/**
 	 * Initializes the frame for the stand-alone application.
 	 */
@@ -1678,7 +1678,7 @@ public class NewProblemWizardDialog extends EscapeDialog
 			boolean continueAllowed = true;
 			String fileName = problemNameTextField.getText();
 			// Assuming the user didn't specify our file type, append the type
-			if(!fileName.endsWith(".marla"))
+			if(!fileName.endsWith(".marla") && !fileName.endsWith(".marlab"))
 			{
 				fileName += ".marla";
 			}
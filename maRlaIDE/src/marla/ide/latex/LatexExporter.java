@@ -42,10 +42,12 @@ import org.jdom.Text;
 import org.jdom.input.SAXBuilder;
 import marla.ide.operation.Operation;
 import marla.ide.operation.OperationInformation;
+import marla.ide.operation.OperationScheduler;
 import marla.ide.problem.DataColumn;
 import marla.ide.problem.DataSource;
 import marla.ide.problem.SubProblem;
 import marla.ide.r.RProcessor;
+import marla.ide.r.RProcessorPool;
 import marla.ide.r.RProcessorException;
 import marla.ide.resource.Configuration.ConfigType;
 import marla.ide.resource.ConfigurationException;
@@ -442,6 +444,10 @@ public class LatexExporter
 			tempFile.deleteOnExit();
 			BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile));
 
+			// Compute everything up front, independent branches at the same time
+			for(int i = 0; i < prob.getDataCount(); i++)
+				OperationScheduler.recompute(prob.getData(i));
+
 			// Process, making sure it's reset properly
 			currentSub = null;
 			processSequenceClean(templateXML.getChild("main"), writer);
@@ -1216,15 +1222,26 @@ public class LatexExporter
 		{
 			// Sweave it
 			String sweaveOutput = null;
-			RProcessor proc = RProcessor.getInstance();
+			File sweaveDir = null;
+			RProcessorPool pool = RProcessorPool.getInstance();
+			RProcessor proc = pool.lease();
+
+			// Long reports can legitimately take a while, don't cut them off
+			int oldTimeout = proc.setTimeout(0);
 			try
 			{
 				sweaveOutput = proc.execute("Sweave('" + rnwPath.replaceAll("\\\\", "/") + "')");
+				sweaveDir = new File(proc.getWorkingDirectory());
 			}
 			catch(RProcessorException ex)
 			{
 				throw new LatexException("Unable to sweave file '" + rnwPath + "', likely an error in the template '" + templatePath + "'", ex);
 			}
+			finally
+			{
+				proc.setTimeout(oldTimeout);
+				pool.release(proc);
+			}
 
 			// Pull out tex file generated by Sweave
 			Pattern texPatt = Pattern.compile("^You can now run LaTeX on '(.*\\.tex)'", Pattern.MULTILINE);
@@ -1241,8 +1258,9 @@ public class LatexExporter
 
 			// Create pdflatex instance
 			System.out.println("Running '" + texPath + "' through '" + pdfTexPath + "'");
+			// Run where Sweave left the tex file and any figures it refers to
 			ProcessBuilder procBuild = new ProcessBuilder(pdfTexPath, texPath);
-			procBuild.directory(new File(System.getProperty("java.io.tmpdir")));
+			procBuild.directory(sweaveDir);
 			procBuild.redirectErrorStream(true);
 
 			// We'll use this every pass, might as well pre-compile it
@@ -20,12 +20,15 @@
 package marla.ide.operation;
 
 import java.awt.Color;
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.TreeMap;
 import marla.ide.operation.OperationInformation.PromptType;
 import org.jdom.Element;
@@ -38,6 +41,9 @@ import marla.ide.problem.MarlaException;
 import marla.ide.problem.Problem;
 import marla.ide.problem.SubProblem;
 import marla.ide.r.RProcessor;
+import marla.ide.r.RProcessorDeadException;
+import marla.ide.r.RProcessorException;
+import marla.ide.r.RProcessorPool;
 
 /**
  * Operation to perform on a parent object that implements
@@ -101,6 +107,11 @@ public abstract class Operation extends DataSource implements Cloneable
 	 * True if the operation needs to recompute its values before returning results
 	 */
 	private boolean isCacheDirty = true;
+	/**
+	 * True if an operation above us needs to recompute, which may or may not
+	 * change any of the columns we use
+	 */
+	private boolean isParentStale = false;
 	/**
 	 * True if the operation is recalculating its results, used to allow it to
 	 * work with its own columns and not cause infinite recursion. Not certain
@@ -860,18 +871,31 @@ public abstract class Operation extends DataSource implements Cloneable
 	 */
 	public final void checkCache()
 	{
-		if(isCacheDirty && !inRecompute)
+		if(inRecompute)
+			return;
+
+		// Bring our parent up to date first. If it recomputes and changes
+		// a column we use, we'll be marked dirty
+		if(isParentStale)
+		{
+			if(parent instanceof Operation)
+				((Operation)parent).checkCache();
+
+			isParentStale = false;
+		}
+
+		if(isCacheDirty)
 			refreshCache();
 	}
 
 	/**
 	 * Retrieves the computation status of the Operation.
-	 * @return true if the Operation needs to recompute values before it can
+	 * @return true if the Operation may need to recompute values before it can
 	 *		return anything, false otherwise
 	 */
 	public final boolean isDirty()
 	{
-		return isCacheDirty;
+		return isCacheDirty || isParentStale;
 	}
 
 	/**
@@ -894,6 +918,59 @@ public abstract class Operation extends DataSource implements Cloneable
 		if(isInfoUnanswered())
 			throw new OperationInfoRequiredException("More information required for computation", this);
 
+		// Maybe we've done this exact computation before
+		String cacheKey = OperationResultCache.getKey(this);
+		OperationResultCache.Result cached = OperationResultCache.load(cacheKey);
+		if(cached != null)
+		{
+			restoreResult(cached);
+			return;
+		}
+
+		// Work through our own R process, allowing other operations to
+		// compute at the same time
+		RProcessorPool pool = RProcessorPool.getInstance();
+		RProcessor proc = pool.lease();
+
+		// Hang onto the old results so we can tell what actually changed
+		List<DataColumn> oldColumns = new ArrayList<DataColumn>(data.getColumns());
+
+		try
+		{
+			try
+			{
+				computeThrough(proc, cacheKey, oldColumns);
+			}
+			catch(RProcessorDeadException ex)
+			{
+				// R died part way through and was restarted, losing everything
+				// we had set up in it. Start over once on the fresh process
+				if(!proc.isRunning())
+					throw ex;
+
+				proc.fetchInteraction();
+				computeThrough(proc, cacheKey, oldColumns);
+			}
+		}
+		finally
+		{
+			pool.release(proc);
+		}
+	}
+
+	/**
+	 * Runs the computation through the given R process and saves the result
+	 * @param proc R process leased for the computation
+	 * @param cacheKey Key to save the result under in the result cache
+	 * @param oldColumns Results from before the recompute began
+	 */
+	private void computeThrough(RProcessor proc, String cacheKey, List<DataColumn> oldColumns)
+	{
+		// Everything the computation leaves in R is thrown away afterward. The
+		// start of the scope rides along with the computation's first commands
+		boolean batchStarted = proc.startBatch();
+		String scope = proc.startScope();
+
 		try
 		{
 			// Get data from parent to allow us to pull stuff down quickly
@@ -901,15 +978,19 @@ public abstract class Operation extends DataSource implements Cloneable
 			startIndex = parent.getColumnCount();
 
 			// Compute new columns and save the way we do so (R commands) for use by toString()
-			RProcessor proc = RProcessor.getInstance();
 			proc.setRecorderMode(RProcessor.RecordMode.CMDS_ONLY);
 			inRecompute = true;
 			computeColumns(proc);
+			if(batchStarted)
+				proc.endBatch();
 			operationRecord = proc.fetchInteraction();
 			proc.setRecorderMode(RProcessor.RecordMode.DISABLED);
 
-			// Children are dirty. Dirty, dirty children
-			markDirty();
+			// Save for next time
+			OperationResultCache.store(cacheKey, data.getColumns(), operationRecord, getPlotFile());
+
+			// Children using columns that changed are dirty. Dirty, dirty children
+			markChangedColumns(oldColumns);
 
 			// But we're clean!
 			isCacheDirty = false;
@@ -918,9 +999,96 @@ public abstract class Operation extends DataSource implements Cloneable
 		{
 			// Well we're certainly not recomputing any more
 			inRecompute = false;
+
+			try
+			{
+				// Anything left didn't get run due to an error
+				if(batchStarted)
+					proc.cancelBatch();
+
+				proc.endScope(scope);
+			}
+			catch(RProcessorException ex)
+			{
+				// R is in trouble, whatever went wrong first is more useful to report
+			}
+		}
+	}
+
+	/**
+	 * Fills our results from a previously saved computation rather than
+	 * running it through R
+	 * @param cached Result loaded from the cache
+	 */
+	private void restoreResult(OperationResultCache.Result cached)
+	{
+		try
+		{
+			List<DataColumn> oldColumns = new ArrayList<DataColumn>(data.getColumns());
+			data.clearColumns();
+			startIndex = parent.getColumnCount();
+			inRecompute = true;
+
+			for(int i = 0; i < cached.names.size(); i++)
+			{
+				DataColumn dc = data.addColumn(cached.names.get(i));
+				dc.setMode(cached.modes.get(i));
+
+				Object vals = cached.values.get(i);
+				if(vals instanceof double[])
+					dc.addAll((double[])vals);
+				else
+					dc.addAll(Arrays.asList((String[])vals));
+			}
+
+			operationRecord = cached.record;
+			restorePlotFile(cached.plot);
+
+			markChangedColumns(oldColumns);
+			isCacheDirty = false;
+		}
+		finally
+		{
+			inRecompute = false;
 		}
 	}
 
+	/**
+	 * Returns a description of how this operation is configured to compute,
+	 * such that two operations with the same description, answers, and inputs
+	 * produce the same results. Derivative classes configured by more than
+	 * their class should override this
+	 * @return Description of the operation's configuration, null if the
+	 *		operation's results may differ between runs (random samples, for
+	 *		example) and so must never be cached
+	 */
+	protected String getConfigSignature()
+	{
+		return getName();
+	}
+
+	/**
+	 * Returns the plot file created by the last computation, without
+	 * computing if dirty. Derivative classes which create plots must
+	 * override this
+	 * @return Plot file, null if there is none
+	 */
+	protected File getPlotFile()
+	{
+		return null;
+	}
+
+	/**
+	 * Uses the given image, saved from a previous computation, as this
+	 * operation's plot. Derivative classes which create plots must
+	 * override this
+	 * @param plot Contents of the plot image, null if the computation made
+	 *		none and any current plot should be dropped
+	 */
+	protected void restorePlotFile(byte[] plot)
+	{
+	}
+
 	/**
 	 * Overridden by child operations to actually perform the task. When the
 	 * column/other data is requested the deriving class should place the
@@ -1187,9 +1355,72 @@ public abstract class Operation extends DataSource implements Cloneable
 	@Override
 	public final void markDirty()
 	{
-		// Mark as dirty but don't actually recompute yet
+		// Mark as dirty but don't actually recompute yet. Children can't know
+		// if they're affected until we've recomputed
 		isCacheDirty = true;
-		super.markDirty();
+		markChildrenStale();
+	}
+
+	/**
+	 * Tells this operation that a column in its parent has changed. If we use
+	 * the column we're marked dirty. Either way the column is visible to our
+	 * children through us, so they're told as well
+	 * @param colName Name of the column that changed
+	 */
+	public final void parentColumnChanged(String colName)
+	{
+		Set<String> used = getUsedColumns();
+		if(used == null || used.contains(colName))
+			markDirty();
+
+		markDirty(colName);
+	}
+
+	/**
+	 * Returns the names of the parent columns this operation reads when computing.
+	 * Changes to any other parent column do not require a recompute. Derivative
+	 * classes should override this if they know which columns they use
+	 * @return Set of column names, null if any parent column may be used
+	 */
+	public Set<String> getUsedColumns()
+	{
+		return null;
+	}
+
+	/**
+	 * Marks every operation below us as possibly needing to recompute
+	 */
+	private void markChildrenStale()
+	{
+		for(int i = 0; i < getOperationCount(); i++)
+		{
+			Operation child = getOperation(i);
+			child.isParentStale = true;
+			child.markChildrenStale();
+		}
+	}
+
+	/**
+	 * Compares the newly computed columns with the previous results and tells
+	 * our children about each column that was added, removed, or changed
+	 * @param oldColumns Columns from the previous computation
+	 */
+	private void markChangedColumns(List<DataColumn> oldColumns)
+	{
+		Map<String, DataColumn> oldLookup = new HashMap<String, DataColumn>();
+		for(DataColumn dc : oldColumns)
+			oldLookup.put(dc.getName(), dc);
+
+		for(int i = 0; i < data.getColumnCount(); i++)
+		{
+			DataColumn dc = data.getColumn(i);
+			DataColumn oldCol = oldLookup.remove(dc.getName());
+			if(oldCol == null || !oldCol.equals(dc))
+				markDirty(dc.getName());
+		}
+
+		for(String removedName : oldLookup.keySet())
+			markDirty(removedName);
 	}
 
 	/**
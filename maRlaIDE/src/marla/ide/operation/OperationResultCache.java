@@ -0,0 +1,728 @@
+/*
+ * The maRla Project - Graphical problem solver for statistical calculations.
+ * Copyright © 2011 Cedarville University
+ * http://marla.googlecode.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package marla.ide.operation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import marla.ide.problem.DataColumn;
+import marla.ide.problem.DataColumn.DataMode;
+import marla.ide.problem.DataNotFoundException;
+import marla.ide.problem.DataSource;
+import marla.ide.problem.InternalMarlaException;
+import marla.ide.resource.Configuration.ConfigType;
+import marla.ide.resource.ConfigurationException;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Saves the results of operation computations to disk so they can be reused
+ * instead of running R again, most importantly when a problem is reopened.
+ * Results are stored under a key built from everything that goes into the
+ * computation: the operation's configuration, the answers to its questions,
+ * and the values of the parent columns it uses. Any change to those produces a
+ * new key, so stale results are never found, only eventually thrown away when
+ * the cache grows past its size limit.
+ *
+ * Recently used results are also held in memory, up to a configurable limit,
+ * so identical operations (the same computation on the same column on several
+ * branches, for example) share a single trip to R. The memory cache works even
+ * if the disk cache is disabled.
+ *
+ * The cache is purely an optimization. Any problem reading or writing it is
+ * treated as a miss and the operation computes through R as usual.
+ * @author Ryan Morehart
+ */
+public final class OperationResultCache
+{
+	/**
+	 * Version of the result file layout, part of every key so that a change to
+	 * the layout never reads old files
+	 */
+	private static final int FORMAT_VERSION = 1;
+	/**
+	 * Extension given to result files
+	 */
+	private static final String RESULT_EXTENSION = ".result";
+	/**
+	 * Directory results are stored in, null if caching is disabled
+	 */
+	private static File cacheDir = null;
+	/**
+	 * Total size in bytes the cache directory is allowed to reach before the
+	 * least recently used results are removed
+	 */
+	private static long maxCacheSize = 256L * 1024 * 1024;
+	/**
+	 * Number of megabytes of results which may be held in memory, zero to
+	 * disable the memory cache
+	 */
+	private static int memoryLimit = 64;
+	/**
+	 * Results held in memory, least recently used first
+	 */
+	private static final Map<String, Result> memoryCache = new LinkedHashMap<String, Result>(16, 0.75f, true);
+	/**
+	 * Estimated number of bytes used by the results in memoryCache
+	 */
+	private static long memoryUsed = 0;
+
+	/**
+	 * Results are only accessed statically
+	 */
+	private OperationResultCache()
+	{
+	}
+
+	/**
+	 * A computation result read back from the cache
+	 */
+	static final class Result
+	{
+		/**
+		 * R commands recorded when the result was computed
+		 */
+		final String record;
+		/**
+		 * Names of the computed columns
+		 */
+		final List<String> names = new ArrayList<String>();
+		/**
+		 * Mode of each computed column
+		 */
+		final List<DataMode> modes = new ArrayList<DataMode>();
+		/**
+		 * Values of each computed column, either a double[] or String[]
+		 */
+		final List<Object> values = new ArrayList<Object>();
+		/**
+		 * Plot image, null if the operation had none
+		 */
+		final byte[] plot;
+		/**
+		 * Rough number of bytes of memory this result takes up
+		 */
+		private long size = 0;
+
+		/**
+		 * Creates a result from a just-finished computation, copying the values
+		 * of each column
+		 * @param columns Columns the operation computed
+		 * @param record R commands recorded while computing
+		 * @param plot Plot image the operation created, null if none
+		 */
+		private Result(List<DataColumn> columns, String record, byte[] plot)
+		{
+			this.record = record;
+			this.plot = plot;
+
+			for(DataColumn dc : columns)
+			{
+				names.add(dc.getName());
+				modes.add(dc.getMode());
+				if(dc.isNumeric())
+				{
+					values.add(dc.toDoubleArray());
+				}
+				else
+				{
+					String[] vals = new String[dc.size()];
+					for(int i = 0; i < vals.length; i++)
+					{
+						Object val = dc.get(i);
+						vals[i] = (val != null ? val.toString() : null);
+					}
+					values.add(vals);
+				}
+			}
+
+			estimateSize();
+		}
+
+		/**
+		 * Reads a result from the given stream
+		 * @param in Stream positioned at the start of a result
+		 */
+		private Result(DataInputStream in) throws IOException
+		{
+			if(in.readInt() != FORMAT_VERSION)
+				throw new IOException("Result file is from a different version");
+
+			record = readString(in);
+
+			int colCount = in.readInt();
+			for(int i = 0; i < colCount; i++)
+			{
+				names.add(readString(in));
+				boolean isNumeric = in.readBoolean();
+				int size = in.readInt();
+				if(isNumeric)
+				{
+					modes.add(DataMode.NUMERIC);
+					double[] vals = new double[size];
+					for(int j = 0; j < size; j++)
+						vals[j] = in.readDouble();
+					values.add(vals);
+				}
+				else
+				{
+					modes.add(DataMode.STRING);
+					String[] vals = new String[size];
+					for(int j = 0; j < size; j++)
+						vals[j] = readString(in);
+					values.add(vals);
+				}
+			}
+
+			int plotSize = in.readInt();
+			if(plotSize >= 0)
+			{
+				plot = new byte[plotSize];
+				in.readFully(plot);
+			}
+			else
+				plot = null;
+
+			estimateSize();
+		}
+
+		/**
+		 * Writes this result to the given stream, in the form read back by
+		 * the stream constructor
+		 * @param out Stream to write to
+		 */
+		private void write(DataOutputStream out) throws IOException
+		{
+			out.writeInt(FORMAT_VERSION);
+			writeString(out, record);
+
+			out.writeInt(names.size());
+			for(int i = 0; i < names.size(); i++)
+			{
+				writeString(out, names.get(i));
+				Object vals = values.get(i);
+				if(vals instanceof double[])
+				{
+					double[] nums = (double[])vals;
+					out.writeBoolean(true);
+					out.writeInt(nums.length);
+					for(double d : nums)
+						out.writeDouble(d);
+				}
+				else
+				{
+					String[] strs = (String[])vals;
+					out.writeBoolean(false);
+					out.writeInt(strs.length);
+					for(String str : strs)
+						writeString(out, str);
+				}
+			}
+
+			if(plot != null)
+			{
+				out.writeInt(plot.length);
+				out.write(plot);
+			}
+			else
+				out.writeInt(-1);
+		}
+
+		/**
+		 * Works out roughly how much memory this result takes up
+		 */
+		private void estimateSize()
+		{
+			size = 64;
+			if(record != null)
+				size += 2 * record.length();
+			if(plot != null)
+				size += plot.length;
+
+			for(int i = 0; i < names.size(); i++)
+			{
+				size += 64;
+				Object vals = values.get(i);
+				if(vals instanceof double[])
+				{
+					size += 8 * ((double[])vals).length;
+				}
+				else
+				{
+					for(String str : (String[])vals)
+						size += 48 + (str != null ? 2 * str.length() : 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets the directory computation results are saved in. The directory is
+	 * created if needed
+	 * @param newDir Path to the directory, null or empty to disable caching
+	 * @return Previously set directory, empty if caching was disabled
+	 */
+	public static String setCacheDirectory(String newDir)
+	{
+		String oldDir = getCacheDirectory();
+
+		if(newDir == null || newDir.isEmpty())
+		{
+			cacheDir = null;
+			return oldDir;
+		}
+
+		File dir = new File(newDir);
+		if(!dir.isDirectory() && !dir.mkdirs())
+			throw new ConfigurationException("Unable to create result cache directory '" + newDir + "'", ConfigType.ResultCache);
+
+		cacheDir = dir;
+		return oldDir;
+	}
+
+	/**
+	 * Returns the directory computation results are saved in
+	 * @return Path to the directory, empty if caching is disabled
+	 */
+	public static String getCacheDirectory()
+	{
+		if(cacheDir != null)
+			return cacheDir.getPath();
+		else
+			return "";
+	}
+
+	/**
+	 * Sets the size the cache may grow to before old results are removed
+	 * @param newSize Maximum size in bytes
+	 * @return Previously set maximum
+	 */
+	public static long setMaxCacheSize(long newSize)
+	{
+		long oldSize = maxCacheSize;
+		maxCacheSize = newSize;
+		return oldSize;
+	}
+
+	/**
+	 * Returns the size the cache may grow to before old results are removed
+	 * @return Maximum size in bytes
+	 */
+	public static long getMaxCacheSize()
+	{
+		return maxCacheSize;
+	}
+
+	/**
+	 * Sets the amount of memory which may be used to hold recent results.
+	 * The least recently used results are dropped if needed to fit
+	 * @param newLimit Limit in megabytes, zero to disable the memory cache
+	 * @return Previously set limit
+	 */
+	public static int setMemoryLimit(int newLimit)
+	{
+		if(newLimit < 0)
+			throw new ConfigurationException("Result cache memory limit may not be negative", ConfigType.ResultCacheMemory);
+
+		synchronized(memoryCache)
+		{
+			int oldLimit = memoryLimit;
+			memoryLimit = newLimit;
+			trimMemory();
+			return oldLimit;
+		}
+	}
+
+	/**
+	 * Returns the amount of memory which may be used to hold recent results
+	 * @return Limit in megabytes
+	 */
+	public static int getMemoryLimit()
+	{
+		return memoryLimit;
+	}
+
+	/**
+	 * Builds the key the result of the given operation's computation would be
+	 * stored under, based on its current configuration, answers, and inputs
+	 * @param op Operation to build the key for, which must have a parent
+	 * @return Key for the operation's result, null if caching is disabled
+	 *		or the operation's results may not be cached
+	 */
+	static String getKey(Operation op)
+	{
+		if(cacheDir == null && memoryLimit == 0)
+			return null;
+
+		String signature = op.getConfigSignature();
+		if(signature == null)
+			return null;
+
+		try
+		{
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			update(digest, Integer.toString(FORMAT_VERSION));
+			update(digest, op.getClass().getName());
+			update(digest, signature);
+
+			// Answers, in the order asked
+			for(OperationInformation info : op.getRequiredInfoPrompt())
+			{
+				update(digest, info.getName());
+				update(digest, String.valueOf(info.getAnswer()));
+			}
+
+			// Parent columns, either everything or just what's used
+			DataSource parent = op.getParentData();
+			Set<String> used = op.getUsedColumns();
+			if(used == null)
+			{
+				for(int i = 0; i < parent.getColumnCount(); i++)
+					update(digest, parent.getColumn(i));
+			}
+			else
+			{
+				for(String colName : new TreeSet<String>(used))
+				{
+					try
+					{
+						update(digest, parent.getColumn(colName));
+					}
+					catch(DataNotFoundException ex)
+					{
+						// Missing is as much a part of the key as present
+						update(digest, "missing " + colName);
+					}
+				}
+			}
+
+			StringBuilder key = new StringBuilder();
+			for(byte b : digest.digest())
+				key.append(String.format("%02x", b));
+			return key.toString();
+		}
+		catch(NoSuchAlgorithmException ex)
+		{
+			// Every Java platform is required to have SHA-1, but just in case
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the result saved under the given key
+	 * @param key Key from getKey()
+	 * @return Saved result, null if there is none
+	 */
+	static Result load(String key)
+	{
+		if(key == null)
+			return null;
+
+		synchronized(memoryCache)
+		{
+			Result result = memoryCache.get(key);
+			if(result != null)
+				return result;
+		}
+
+		if(cacheDir == null)
+			return null;
+
+		File resultFile = new File(cacheDir, key + RESULT_EXTENSION);
+		if(!resultFile.exists())
+			return null;
+
+		DataInputStream in = null;
+		try
+		{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(resultFile)));
+			Result result = new Result(in);
+
+			// Note that it's been used, so it's the last to be thrown out
+			resultFile.setLastModified(System.currentTimeMillis());
+			remember(key, result);
+			return result;
+		}
+		catch(IOException ex)
+		{
+			// Damaged or unreadable, it will be replaced once computed again
+			return null;
+		}
+		finally
+		{
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Saves the result of a computation under the given key
+	 * @param key Key from getKey(), computed before the operation ran
+	 * @param columns Columns the operation computed
+	 * @param record R commands recorded while computing
+	 * @param plot Plot image the operation created, null if none
+	 */
+	static void store(String key, List<DataColumn> columns, String record, File plot)
+	{
+		if(key == null)
+			return;
+
+		File tempFile = null;
+		DataOutputStream out = null;
+		try
+		{
+			byte[] plotBytes = null;
+			if(plot != null && plot.exists())
+				plotBytes = FileUtils.readFileToByteArray(plot);
+
+			Result result = new Result(columns, record, plotBytes);
+			remember(key, result);
+
+			if(cacheDir == null)
+				return;
+
+			// Write it all out under a temporary name, so a result that is
+			// only partially written is never read
+			tempFile = File.createTempFile("result", ".tmp", cacheDir);
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			result.write(out);
+			out.close();
+			out = null;
+
+			File resultFile = new File(cacheDir, key + RESULT_EXTENSION);
+			resultFile.delete();
+			if(!tempFile.renameTo(resultFile))
+				tempFile.delete();
+
+			trim();
+		}
+		catch(IOException ex)
+		{
+			// Just don't cache this one
+			IOUtils.closeQuietly(out);
+			if(tempFile != null)
+				tempFile.delete();
+		}
+	}
+
+	/**
+	 * Holds the given result in memory, dropping the least recently used
+	 * results if needed to stay within the memory limit
+	 * @param key Key the result is stored under
+	 * @param result Result to hold
+	 */
+	private static void remember(String key, Result result)
+	{
+		synchronized(memoryCache)
+		{
+			Result old = memoryCache.put(key, result);
+			if(old != null)
+				memoryUsed -= old.size;
+			memoryUsed += result.size;
+
+			trimMemory();
+		}
+	}
+
+	/**
+	 * Drops the least recently used results held in memory until the
+	 * memory limit is met. Must be called while holding memoryCache's lock
+	 */
+	private static void trimMemory()
+	{
+		long limit = memoryLimit * 1024L * 1024L;
+		Iterator<Result> it = memoryCache.values().iterator();
+		while(memoryUsed > limit && it.hasNext())
+		{
+			memoryUsed -= it.next().size;
+			it.remove();
+		}
+	}
+
+	/**
+	 * Removes every saved result
+	 */
+	public static void clear()
+	{
+		synchronized(memoryCache)
+		{
+			memoryCache.clear();
+			memoryUsed = 0;
+		}
+
+		if(cacheDir == null)
+			return;
+
+		for(File resultFile : getResultFiles())
+			resultFile.delete();
+	}
+
+	/**
+	 * Removes the least recently used results until the cache is within its
+	 * size limit
+	 */
+	private static synchronized void trim()
+	{
+		File[] resultFiles = getResultFiles();
+
+		long totalSize = 0;
+		for(File resultFile : resultFiles)
+			totalSize += resultFile.length();
+
+		if(totalSize <= maxCacheSize)
+			return;
+
+		Arrays.sort(resultFiles, new Comparator<File>()
+		{
+			@Override
+			public int compare(File a, File b)
+			{
+				long diff = a.lastModified() - b.lastModified();
+				return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+			}
+		});
+
+		for(int i = 0; i < resultFiles.length && totalSize > maxCacheSize; i++)
+		{
+			long size = resultFiles[i].length();
+			if(resultFiles[i].delete())
+				totalSize -= size;
+		}
+	}
+
+	/**
+	 * Returns every result file in the cache directory
+	 * @return Result files, empty if there are none
+	 */
+	private static File[] getResultFiles()
+	{
+		File[] resultFiles = cacheDir.listFiles(new FileFilter()
+		{
+			@Override
+			public boolean accept(File f)
+			{
+				return f.getName().endsWith(RESULT_EXTENSION);
+			}
+		});
+
+		if(resultFiles == null)
+			return new File[0];
+		else
+			return resultFiles;
+	}
+
+	/**
+	 * Adds the given string to a key being built
+	 * @param digest Key being built
+	 * @param val String to add
+	 */
+	private static void update(MessageDigest digest, String val)
+	{
+		try
+		{
+			digest.update(val.getBytes("UTF-8"));
+			digest.update((byte)0);
+		}
+		catch(UnsupportedEncodingException ex)
+		{
+			throw new InternalMarlaException("UTF-8 not supported", ex);
+		}
+	}
+
+	/**
+	 * Adds the name, mode, and values of the given column to a key being built
+	 * @param digest Key being built
+	 * @param dc Column to add
+	 */
+	private static void update(MessageDigest digest, DataColumn dc)
+	{
+		update(digest, dc.getName());
+		update(digest, dc.getMode().toString());
+		update(digest, Integer.toString(dc.size()));
+
+		if(dc.isNumeric())
+		{
+			byte[] bits = new byte[8];
+			for(int i = 0; i < dc.size(); i++)
+			{
+				long l = Double.doubleToLongBits(dc.getDouble(i));
+				for(int j = 0; j < 8; j++)
+					bits[j] = (byte)(l >>> (56 - 8 * j));
+				digest.update(bits);
+			}
+		}
+		else
+		{
+			for(int i = 0; i < dc.size(); i++)
+				update(digest, String.valueOf(dc.get(i)));
+		}
+	}
+
+	/**
+	 * Writes a string that may be null or longer than writeUTF() allows
+	 * @param out Stream to write to
+	 * @param val String to write
+	 */
+	private static void writeString(DataOutputStream out, String val) throws IOException
+	{
+		if(val == null)
+		{
+			out.writeInt(-1);
+			return;
+		}
+
+		byte[] bytes = val.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a string written by writeString()
+	 * @param in Stream to read from
+	 * @return String read, which may be null
+	 */
+	private static String readString(DataInputStream in) throws IOException
+	{
+		int len = in.readInt();
+		if(len < 0)
+			return null;
+
+		byte[] bytes = new byte[len];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+}
@@ -0,0 +1,221 @@
+/*
+ * The maRla Project - Graphical problem solver for statistical calculations.
+ * Copyright © 2011 Cedarville University
+ * http://marla.googlecode.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package marla.ide.operation;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import marla.ide.gui.Domain;
+import marla.ide.problem.DataSource;
+import marla.ide.problem.MarlaException;
+import marla.ide.r.RProcessorPool;
+
+/**
+ * Brings every operation below a DataSource up to date, computing independent
+ * branches of the tree at the same time. Each operation is only started once its
+ * parent has finished, and each computes through its own leased R process, so
+ * the number of branches worked on at once is limited by the R process pool.
+ *
+ * Operations that fail to compute (for example, because they still need
+ * information from the user) are left dirty, along with everything below them.
+ * Whoever next checks those operations directly will see the failure.
+ * @author Ryan Morehart
+ */
+public final class OperationScheduler
+{
+	/**
+	 * Threads computing operations
+	 */
+	private final ExecutorService workers;
+	/**
+	 * Number of operations scheduled but not yet finished
+	 */
+	private int pending = 0;
+
+	/**
+	 * Creates a new scheduler with the given number of worker threads
+	 * @param threads Number of operations which may compute at once
+	 */
+	private OperationScheduler(int threads)
+	{
+		workers = Executors.newFixedThreadPool(threads, new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "Operation Compute");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Computes every dirty operation below the given DataSource, and the
+	 * DataSource itself if it is an operation. Returns once all of them
+	 * have finished
+	 * @param root DataSource to start at
+	 */
+	public static void recompute(DataSource root)
+	{
+		// Only worth spinning up threads if there's work to do
+		int dirtyCount = 0;
+		if(root instanceof Operation && ((Operation)root).isDirty())
+			dirtyCount++;
+		for(Operation op : root.getAllChildOperations())
+		{
+			if(op.isDirty())
+				dirtyCount++;
+		}
+
+		if(dirtyCount == 0)
+			return;
+
+		if(root instanceof Operation && !compute((Operation)root))
+			return;
+
+		int threads = Math.min(RProcessorPool.getMaxSize(), dirtyCount);
+		if(threads <= 1)
+		{
+			// Nothing to gain from other threads, and a caller holding the
+			// only R process would leave them waiting forever
+			computeSerially(root);
+			return;
+		}
+
+		OperationScheduler scheduler = new OperationScheduler(threads);
+		try
+		{
+			scheduler.scheduleChildren(root);
+			scheduler.waitForAll();
+		}
+		finally
+		{
+			scheduler.workers.shutdown();
+		}
+	}
+
+	/**
+	 * Computes each child of the given DataSource in turn on the current
+	 * thread, working down the tree
+	 * @param parent DataSource whose children should be computed
+	 */
+	private static void computeSerially(DataSource parent)
+	{
+		for(int i = 0; i < parent.getOperationCount(); i++)
+		{
+			Operation op = parent.getOperation(i);
+			if(compute(op))
+				computeSerially(op);
+		}
+	}
+
+	/**
+	 * Computes the given operation if needed
+	 * @param op Operation to compute
+	 * @return true if the operation is up to date, false if it failed
+	 */
+	private static boolean compute(Operation op)
+	{
+		try
+		{
+			op.checkCache();
+			return true;
+		}
+		catch(MarlaException ex)
+		{
+			// Whoever checks the operation directly reports it to the user
+			Domain.logger.add(ex);
+			return false;
+		}
+		catch(RuntimeException ex)
+		{
+			// Would otherwise vanish with the worker thread
+			Domain.logger.add(ex);
+			return false;
+		}
+	}
+
+	/**
+	 * Schedules each child of the given DataSource to be computed
+	 * @param parent DataSource whose children should be computed
+	 */
+	private void scheduleChildren(DataSource parent)
+	{
+		for(int i = 0; i < parent.getOperationCount(); i++)
+			schedule(parent.getOperation(i));
+	}
+
+	/**
+	 * Schedules the given operation to be computed. Once it finishes
+	 * successfully its children are scheduled in turn
+	 * @param op Operation to compute
+	 */
+	private synchronized void schedule(final Operation op)
+	{
+		pending++;
+		workers.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					if(compute(op))
+						scheduleChildren(op);
+				}
+				finally
+				{
+					finished();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Notes that a scheduled operation has finished
+	 */
+	private synchronized void finished()
+	{
+		pending--;
+		if(pending == 0)
+			notifyAll();
+	}
+
+	/**
+	 * Waits for every scheduled operation, including those scheduled
+	 * while waiting, to finish
+	 */
+	private synchronized void waitForAll()
+	{
+		while(pending > 0)
+		{
+			try
+			{
+				wait();
+			}
+			catch(InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				throw new OperationException("Interrupted while computing operations", ex);
+			}
+		}
+	}
+}
@@ -29,15 +29,25 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import javax.imageio.ImageIO;
 import marla.ide.operation.OperationInformation.PromptType;
-import org.jdom.Document;
 import org.jdom.Element;
-import org.jdom.JDOMException;
 import org.jdom.Text;
-import org.jdom.input.SAXBuilder;
+import org.jdom.output.Format;
+import org.jdom.output.XMLOutputter;
 import marla.ide.problem.DataColumn;
 import marla.ide.problem.DataColumn.DataMode;
 import marla.ide.problem.DataNotFoundException;
@@ -50,6 +60,7 @@ import marla.ide.r.RProcessor.RecordMode;
 import marla.ide.r.RProcessorParseException;
 import marla.ide.resource.Configuration.ConfigType;
 import marla.ide.resource.ConfigurationException;
+import org.apache.commons.io.FileUtils;
 
 /**
  * Performs statistical operations though R as directed by an XML template
@@ -70,9 +81,25 @@ public class OperationXML extends Operation
 	 */
 	private static List<String> additionalOpsPaths = null;
 	/**
-	 * Storage location for parsed operation XML file
+	 * File holding the definition of each operation, by name
 	 */
-	private static Element operationXML = null;
+	private static Map<String, OperationXMLFile> operationIndex = null;
+	/**
+	 * Names of the operations which should be shown to the user, in file order
+	 */
+	private static List<String> listedOperations = null;
+	/**
+	 * Names of the listed operations in each category
+	 */
+	private static Map<String, List<String>> categorizedOperations = null;
+	/**
+	 * R libraries loaded by name by any of the available operations
+	 */
+	private static List<String> requiredLibraries = null;
+	/**
+	 * Compiled computations, keyed by the computation element they came from
+	 */
+	private static final Map<Element, Sequence> compiledPlans = new WeakHashMap<Element, Sequence>();
 	/**
 	 * Configuration information for an instantiated operation
 	 */
@@ -89,6 +116,16 @@ public class OperationXML extends Operation
 	 * Denotes if the operation produces a FAKE plot
 	 */
 	private boolean hasFakePlot = false;
+	/**
+	 * Denotes if the computation loops over the parent, in which case it may
+	 * use any parent column rather than just those chosen by the user
+	 */
+	private boolean usesAllColumns = false;
+	/**
+	 * Compiled form of the computation element, shared with every other
+	 * instance of the same operation
+	 */
+	private Sequence plan = null;
 	/**
 	 * Used to store the name of the plot we (might) create. Unused
 	 * if the XML specification itself doesn't contain a <plot />
@@ -187,122 +224,189 @@ public class OperationXML extends Operation
 	 */
 	public static void clearXMLOps()
 	{
-		operationXML = null;
-	}
+		operationIndex = null;
+		listedOperations = null;
+		categorizedOperations = null;
+		requiredLibraries = null;
 
-	/**
-	 * Loads the XML operations from disk using the set paths (user and primary)
-	 * if they are not already. To force a reload, first call clearXMLOps()
-	 */
-	public static void loadXML()
-	{
-		if(operationXML == null)
+		synchronized(compiledPlans)
 		{
-			if(primaryOpsPath != null)
-				loadXML(primaryOpsPath, true);
-
-			if(additionalOpsPaths != null)
-				loadXML(additionalOpsPaths);
+			compiledPlans.clear();
 		}
 	}
 
 	/**
-	 * Clears any current XML operations and loads the ones given
-	 * @param xmlPaths Path(s) to operation XML files
+	 * Loads the XML operations from disk using the set paths (user and primary)
+	 * if they are not already. The files are read at the same time, but only far
+	 * enough to list their operations. Full definitions are read when one of a
+	 * file's operations is first created. To force a reload, first call clearXMLOps()
 	 */
-	private static void loadXML(List<String> xmlPaths)
+	public static void loadXML()
 	{
-		// Load each path listed
-		for(String path : xmlPaths)
-		{
-			if(path != null && !path.isEmpty())
-				loadXML(path, false);
-		}
+		if(operationIndex == null)
+			buildIndex(loadFiles());
 	}
 
 	/**
-	 * Loads the XML. If the XML path has not been set by loadXML then an
-	 * IncompleteInitializationException is thrown. If the XML is contains
-	 * parse errors an exception will be thrown.
-	 * @param xmlPath Path to the operation XML file to include
-	 * @param isPrimary true if this file is the primary (base). false if it's secondary/user supplied
+	 * Reads each of the operation files, in parallel if there are several
+	 * @return Files read, primary first then the user files in the order given
 	 */
-	private static void loadXML(String xmlPath, boolean isPrimary)
+	private static List<OperationXMLFile> loadFiles()
 	{
-		try
+		// Work out what we're loading
+		List<String> paths = new ArrayList<String>();
+		if(primaryOpsPath != null)
+			paths.add(primaryOpsPath);
+
+		if(additionalOpsPaths != null)
 		{
-			// Make sure we know where we're looking
-			if(xmlPath == null)
+			for(String path : additionalOpsPaths)
 			{
-				if(isPrimary)
-					throw new ConfigurationException("XML file for operations has not been specified", ConfigType.PrimaryOpsXML);
-				else
-					throw new ConfigurationException("Null name for user XML operations given", ConfigType.UserOpsXML);
+				if(path != null && !path.isEmpty())
+				{
+					if(primaryOpsPath == null)
+						throw new InternalMarlaException("User XML given before primary XML");
+
+					paths.add(path);
+				}
 			}
+		}
 
-			SAXBuilder parser = new SAXBuilder();
-			Document doc = parser.build(xmlPath);
+		List<OperationXMLFile> files = new ArrayList<OperationXMLFile>();
+		if(paths.size() <= 1)
+		{
+			// Nothing to gain from other threads
+			for(String path : paths)
+				files.add(new OperationXMLFile(path, true));
+			return files;
+		}
 
-			// It is an operation file, right?
-			Element root = doc.getRootElement();
-			if(!root.getName().equals("operations"))
-				throw new ConfigurationException("XML file '" + xmlPath + "' does not appear to contain operations", ConfigType.PrimaryOpsXML);
+		int threads = Math.min(paths.size(), Runtime.getRuntime().availableProcessors());
+		ExecutorService loaders = Executors.newFixedThreadPool(threads, new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "Operation XML Load");
+				t.setDaemon(true);
+				return t;
+			}
+		});
 
-			// Just save it or bring it into the combined doc?
-			if(isPrimary)
-				operationXML = root;
-			else if(operationXML != null)
+		try
+		{
+			List<Future<OperationXMLFile>> pending = new ArrayList<Future<OperationXMLFile>>();
+			for(int i = 0; i < paths.size(); i++)
 			{
-				// Check each additional operation to see if it overrides a current one
-				List<String> currNames = getAvailableOperations();
-				List<Element> toBeRemoved = new ArrayList<Element>();
-				for(Object newOpObj : root.getChildren("operation"))
+				final String path = paths.get(i);
+				final boolean isPrimary = (i == 0);
+				pending.add(loaders.submit(new Callable<OperationXMLFile>()
 				{
-					Element newOpEl = (Element)newOpObj;
-					String newOpName = newOpEl.getAttributeValue("name");
-
-					// Remove from document if it's not named at all
-					if(newOpName == null)
+					@Override
+					public OperationXMLFile call()
 					{
-						toBeRemoved.add(newOpEl);
-						continue;
+						return new OperationXMLFile(path, isPrimary);
 					}
+				}));
+			}
 
-					// See if the current operations already contain an operation
-					// with the same name
-					// Overwrite the XML for the current one by removing
-					// the current element, wherever that might be.
-					// We will then add the new one to the end
-					for(Object currOpObj : operationXML.getChildren("operation"))
-					{
-						Element currOpEl = (Element)currOpObj;
-						if(newOpName.equals(currOpEl.getAttributeValue("name")))
-							toBeRemoved.add(currOpEl);
-					}
-				}
+			for(Future<OperationXMLFile> file : pending)
+				files.add(file.get());
+
+			return files;
+		}
+		catch(ExecutionException ex)
+		{
+			// Pass along whatever went wrong with the file
+			if(ex.getCause() instanceof RuntimeException)
+				throw (RuntimeException) ex.getCause();
+			else
+				throw new InternalMarlaException("Unable to load operation XML", ex.getCause());
+		}
+		catch(InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new OperationXMLException("Interrupted while loading operation XML", ex);
+		}
+		finally
+		{
+			loaders.shutdownNow();
+		}
+	}
 
-				// Now remove the duplicates/unnamed elements. Couldn't do it above because we
-				// were looping over the tree (concurrent modification == bad)
-				for(Element opEl : toBeRemoved)
-					opEl.getParentElement().removeContent(opEl);
+	/**
+	 * Indexes the operations in the given files by name and category, so
+	 * lookups and listings don't have to search the files again. Operations
+	 * in later files override those with the same name in earlier ones
+	 * @param files Operation files to index, in order of precedence
+	 */
+	private static void buildIndex(List<OperationXMLFile> files)
+	{
+		Map<String, OperationXMLFile> index = new HashMap<String, OperationXMLFile>();
+		Map<String, OperationXMLFile.Summary> winners = new LinkedHashMap<String, OperationXMLFile.Summary>();
+
+		for(OperationXMLFile file : files)
+		{
+			Set<String> seen = new HashSet<String>();
+			for(OperationXMLFile.Summary op : file.getSummaries())
+			{
+				// Only the first definition in a file counts
+				if(!seen.add(op.name))
+					continue;
 
-				// Add all the new operations to the end
-				operationXML.addContent(root.cloneContent());
+				// Overrides move to the end of the list
+				index.put(op.name, file);
+				winners.remove(op.name);
+				winners.put(op.name, op);
 			}
-			else
-				throw new InternalMarlaException("User XML given before primary XML");
 		}
-		catch(JDOMException ex)
+
+		List<String> listed = new ArrayList<String>();
+		Map<String, List<String>> categorized = new HashMap<String, List<String>>();
+		Set<String> libraries = new LinkedHashSet<String>();
+		for(OperationXMLFile.Summary op : winners.values())
 		{
-			throw new OperationXMLException("Operation XML file '" +xmlPath + "' contains XML error(s)", ex);
+			// Hidden operations may still be used by others, so their libraries count
+			libraries.addAll(op.libraries);
+
+			// Ensure that we're supposed to actually list this one
+			if(!op.listed)
+				continue;
+
+			listed.add(op.name);
+
+			// Add to the categorized list in each place it says
+			if(op.categories.isEmpty())
+				addToCategory(categorized, "Uncategorized", op.name);
+
+			for(String cat : op.categories)
+				addToCategory(categorized, cat, op.name);
 		}
-		catch(IOException ex)
+
+		operationIndex = index;
+		listedOperations = listed;
+		categorizedOperations = categorized;
+		requiredLibraries = new ArrayList<String>(libraries);
+	}
+
+	/**
+	 * Adds the given operation name to a category, creating the category if
+	 * needed
+	 * @param categories Map of categories to operation names
+	 * @param cat Category to add to
+	 * @param name Operation name to add
+	 */
+	private static void addToCategory(Map<String, List<String>> categories, String cat, String name)
+	{
+		List<String> catOps = categories.get(cat);
+		if(catOps == null)
 		{
-			if(isPrimary)
-				throw new ConfigurationException("Unable to read the primary operation XML file '" + xmlPath + "'", ConfigType.PrimaryOpsXML, ex);
-			else
-				throw new ConfigurationException("Unable to read the user operation XML file '" + xmlPath + "'", ConfigType.UserOpsXML, ex);
+			// Not yet, create new category
+			catOps = new ArrayList<String>();
+			categories.put(cat, catOps);
 		}
+
+		catOps.add(name);
 	}
 
 	/**
@@ -315,38 +419,10 @@ public class OperationXML extends Operation
 	public static List<String> getAvailableOperations()
 	{
 		// Attempt to load operations if it hasn't been done yet
-		if(operationXML == null)
+		if(operationIndex == null)
 			loadXML();
 
-		List<String> opNames = new ArrayList<String>();
-		for(Object opEl : operationXML.getChildren("operation"))
-		{
-			Element op = (Element) opEl;
-
-			String name = op.getAttributeValue("name");
-			if(name == null)
-				throw new OperationXMLException("No name supplied for operation in XML file");
-
-			try
-			{
-				// Ensure that we're supposed to actually list this one
-				if(!Boolean.parseBoolean(op.getAttributeValue("list", "true")))
-					continue;
-			}
-			catch(NumberFormatException ex)
-			{
-				throw new OperationXMLException("Operation '" + name + "': Invalid value '" + op.getAttributeValue("list") + "' for list attribute");
-			}
-
-			// Only allow a name to appear once (remove old if it does)
-			int dupeIndex = opNames.indexOf(name);
-			if(dupeIndex != -1)
-				opNames.remove(dupeIndex);
-
-			opNames.add(name);
-		}
-
-		return opNames;
+		return new ArrayList<String>(listedOperations);
 	}
 
 	/**
@@ -360,75 +436,30 @@ public class OperationXML extends Operation
 	public static Map<String, List<String>> getAvailableOperationsCategorized()
 	{
 		// Attempt to load operations if it hasn't been done yet
-		if(operationXML == null)
+		if(operationIndex == null)
 			loadXML();
 
+		// Callers are free to change what they get back, so hand out copies
 		Map<String, List<String>> opsCategorized = new HashMap<String, List<String>>();
-		for(Object opObj : operationXML.getChildren("operation"))
-		{
-			Element opEl = (Element) opObj;
+		for(Map.Entry<String, List<String>> cat : categorizedOperations.entrySet())
+			opsCategorized.put(cat.getKey(), new ArrayList<String>(cat.getValue()));
 
-			// Operation name
-			String name = opEl.getAttributeValue("name");
-			if(name == null)
-				throw new OperationXMLException("No name supplied for operation in XML file");
-
-			try
-			{
-				// Ensure that we're supposed to actually list this one
-				if(!Boolean.parseBoolean(opEl.getAttributeValue("list", "true")))
-					continue;
-			}
-			catch(NumberFormatException ex)
-			{
-				throw new OperationXMLException(name, "Invalid value '" + opEl.getAttributeValue("list") + "' for list attribute");
-			}
+		return opsCategorized;
+	}
 
-			// Add to the categorized list in each place it says
-			boolean catFound = false;
-			for(Object catObj : opEl.getChildren("category"))
-			{
-				Element catEl = (Element)catObj;
-				catFound = true;
-				
-				String cat = catEl.getTextNormalize();
-				
-				//  Does this category already exist?
-				if(!opsCategorized.containsKey(cat))
-				{
-					// Not yet, create new category
-					List<String> newCat = new ArrayList<String>();
-					newCat.add(name);
-					opsCategorized.put(cat, newCat);
-				}
-				else
-				{
-					// Add to existing category
-					opsCategorized.get(cat).add(name);
-				}
-			}
-			
-			// Were no categories found?
-			if(!catFound)
-			{
-				// Put in the default one
-				String cat = "Uncategorized";
-				if(!opsCategorized.containsKey(cat))
-				{
-					// Not yet, create new category
-					List<String> newCat = new ArrayList<String>();
-					newCat.add(name);
-					opsCategorized.put(cat, newCat);
-				}
-				else
-				{
-					// Add to existing category
-					opsCategorized.get(cat).add(name);
-				}
-			}	
-		}
+	/**
+	 * Returns the R libraries that the available operations load by name, so
+	 * they may be installed and loaded before any operation needs them.
+	 * Libraries named by an R variable at computation time are not included
+	 * @return Library names, in the order the operations appear
+	 */
+	public static List<String> getRequiredLibraries()
+	{
+		// Attempt to load operations if it hasn't been done yet
+		if(operationIndex == null)
+			loadXML();
 
-		return opsCategorized;
+		return new ArrayList<String>(requiredLibraries);
 	}
 
 	/**
@@ -456,16 +487,12 @@ public class OperationXML extends Operation
 	protected static Element findConfiguration(String opName)
 	{
 		// Attempt to load operations if it hasn't been done yet
-		if(operationXML == null)
+		if(operationIndex == null)
 			loadXML();
 
-		Element op = null;
-		for(Object opEl : operationXML.getChildren("operation"))
-		{
-			op = (Element) opEl;
-			if(op.getAttributeValue("name").equals(opName))
-				return op;
-		}
+		OperationXMLFile file = operationIndex.get(opName);
+		if(file != null)
+			return file.getDefinition(opName);
 
 		// Couldn't find what they wanted
 		throw new OperationXMLException("Unable to locate operation '" + opName + "'");
@@ -495,6 +522,8 @@ public class OperationXML extends Operation
 		opConfig = org.opConfig;
 		hasPlot = org.hasPlot;
 		hasFakePlot = org.hasFakePlot;
+		usesAllColumns = org.usesAllColumns;
+		plan = org.plan;
 		
 		if(org.displayNameEl != null)
 			displayNameEl = org.displayNameEl;
@@ -537,6 +566,25 @@ public class OperationXML extends Operation
 		// Not found
 		return null;
 	}
+
+	/**
+	 * Checks if there is a loop over the parent's columns within the given element
+	 * @param baseEl Element to start search at
+	 * @return true if a parent loop is found, false otherwise
+	 */
+	private static boolean hasParentLoop(Element baseEl)
+	{
+		for(Object childObj : baseEl.getChildren())
+		{
+			Element childEl = (Element)childObj;
+			if(childEl.getName().equals("loop") && "parent".equals(childEl.getAttributeValue("type")))
+				return true;
+			else if(hasParentLoop(childEl))
+				return true;
+		}
+
+		return false;
+	}
 	
 	/**
 	 * Creates a new operation with the given computational... stuff
@@ -579,6 +627,19 @@ public class OperationXML extends Operation
 		}
 		else
 			throw new InternalMarlaException("getPlotElement() is incorrect");
+
+		usesAllColumns = hasParentLoop(compEl);
+
+		// Work out what to run now rather than on every recompute
+		try
+		{
+			plan = getPlan(compEl);
+		}
+		catch(OperationXMLException ex)
+		{
+			ex.addName(getName());
+			throw ex;
+		}
 		
 		// Parse all the questions
 		clearQuestions();
@@ -688,6 +749,27 @@ public class OperationXML extends Operation
 		}
 	}
 
+	/**
+	 * Operations read the parent columns chosen by the user for their column
+	 * queries. Those which loop over the parent may use anything
+	 * @return Set of column names, null if any parent column may be used
+	 */
+	@Override
+	public Set<String> getUsedColumns()
+	{
+		if(usesAllColumns)
+			return null;
+
+		Set<String> used = new HashSet<String>();
+		for(OperationInformation info : getRequiredInfoPrompt())
+		{
+			if(info.getType() == PromptType.COLUMN && info.isAnswered())
+				used.add((String)info.getAnswer());
+		}
+
+		return used;
+	}
+
 	/**
 	 * Performs the appropriate operations according to whatever the XML says. Fun!
 	 */
@@ -701,16 +783,21 @@ public class OperationXML extends Operation
 		// Clear out old plot
 		this.plotPath = null;
 
-		// Get computation element
-		Element compEl = opConfig.getChild("computation");
-		if(compEl == null)
+		// Compiled when the configuration was set
+		if(plan == null)
 			throw new OperationXMLException("Computation element not specified");
 
+		// Commands whose output we don't need are sent to R together
+		boolean batchStarted = proc.startBatch();
+
 		try
 		{
 			// Process away. Only record the R commands we explicitly say to
 			intendedRecordMode = proc.setRecorderMode(RecordMode.DISABLED);
-			processSequence(proc, compEl);
+			plan.execute(this, proc);
+
+			if(batchStarted)
+				proc.endBatch();
 		}
 		catch(OperationXMLException ex)
 		{
@@ -720,59 +807,80 @@ public class OperationXML extends Operation
 		}
 		finally
 		{
+			// Anything left didn't get run due to an error
+			if(batchStarted)
+				proc.cancelBatch();
+
 			// Restore recording mode
 			proc.setRecorderMode(intendedRecordMode);
 		}
 	}
 
 	/**
-	 * Main processor for a sequence of XML commands. Analyzes each in turn and
-	 * passes them off to the appropriate parser
-	 * @param proc R process to work through, passes it to children
-	 * @param compEl Element with commands to run through
+	 * Returns the compiled form of the given computation element, compiling it
+	 * if no operation has used it yet. Every instance of an operation shares
+	 * the same plan, so the XML is only walked once per definition
+	 * @param compEl Computation element to compile
+	 * @return Plan that performs the commands in the element
 	 */
-	private void processSequence(RProcessor proc, Element compEl)
+	private static Sequence getPlan(Element compEl)
 	{
-		// Walk through each command/control structure sequentially
-		for(Object elObj : compEl.getChildren())
-		{
-			Element el = (Element) elObj;
-
-			String cmdName = el.getName();
-			if(cmdName.equals("cmd"))
-				processCmd(proc, el);
-			else if(cmdName.equals("set"))
-				processSet(proc, el);
-			else if(cmdName.equals("save"))
-				processSave(proc, el);
-			else if(cmdName.equals("loop"))
-				processLoop(proc, el);
-			else if(cmdName.equals("if"))
-				processIf(proc, el);
-			else if(cmdName.equals("fake-plot"))
-				processFakePlot(proc, el);
-			else if(cmdName.equals("plot"))
-				processPlot(proc, el);
-			else if(cmdName.equals("error"))
-				processError(proc, el);
-			else if(cmdName.equals("load"))
-				processLoad(proc, el);
-			else
-				throw new OperationXMLException("Unrecognized command element '" + cmdName + "'");
+		synchronized(compiledPlans)
+		{
+			Sequence plan = compiledPlans.get(compEl);
+			if(plan == null)
+			{
+				plan = new Sequence(compEl);
+				compiledPlans.put(compEl, plan);
+			}
+
+			return plan;
 		}
 	}
 
 	/**
-	 * Passes a single R command off to the processor. 
+	 * Compiles a single command/control structure element into the instruction
+	 * that performs it
+	 * @param el Element to compile
+	 * @return Instruction for the element
+	 */
+	private static Instruction compile(Element el)
+	{
+		String cmdName = el.getName();
+		if(cmdName.equals("cmd"))
+			return new CmdInstruction(el);
+		else if(cmdName.equals("set"))
+			return new SetInstruction(el);
+		else if(cmdName.equals("save"))
+			return new SaveInstruction(el);
+		else if(cmdName.equals("loop"))
+			return new LoopInstruction(el);
+		else if(cmdName.equals("if"))
+			return new IfInstruction(el);
+		else if(cmdName.equals("fake-plot"))
+			return new FakePlotInstruction(el);
+		else if(cmdName.equals("plot"))
+			return new PlotInstruction(el);
+		else if(cmdName.equals("error"))
+			return new ErrorInstruction(el);
+		else if(cmdName.equals("load"))
+			return new LoadInstruction(el);
+		else
+			throw new OperationXMLException("Unrecognized command element '" + cmdName + "'");
+	}
+
+	/**
+	 * Passes a single R command off to the processor. The command is held and sent
+	 * along with the next one that needs output from R
 	 * @param proc R process to work through
-	 * @param cmdEl Element containing the R command to run
+	 * @param cmd Compiled R command to run
 	 */
-	private void processCmd(RProcessor proc, Element cmdEl)
+	private void processCmd(RProcessor proc, CmdInstruction cmd)
 	{
 		try
 		{
 			proc.setRecorderMode(intendedRecordMode);
-			proc.execute(cmdEl.getTextTrim());
+			proc.queue(cmd.cmd);
 		}
 		finally
 		{
@@ -783,29 +891,18 @@ public class OperationXML extends Operation
 	/**
 	 * Sets an R variable with the user's answer to a given prompt
 	 * @param proc R process to set variable to
-	 * @param setEl Element containing the information about set
+	 * @param set Compiled information about set
 	 */
-	private void processSet(RProcessor proc, Element setEl)
+	private void processSet(RProcessor proc, SetInstruction set)
 	{
-		// What answer are we looking for here?
-		String promptKey = setEl.getAttributeValue("name");
-		if(promptKey == null)
-			throw new OperationXMLException("XML specification does not mark '" + promptKey + "' as required information but uses it in computation.");
-
 		// Read the answer
-		OperationInformation answer = getQuestion(promptKey);
+		OperationInformation answer = getQuestion(set.promptKey);
 		if(answer == null)
-			throw new OperationXMLException("Attempt to set R variable based on prompt '" + promptKey + "', but there is no prompt with that name");
+			throw new OperationXMLException("Attempt to set R variable based on prompt '" + set.promptKey + "', but there is no prompt with that name");
 
 		// Record the set calls
 		proc.setRecorderMode(intendedRecordMode);
 
-		// All of them will save to here. If no name is given, use the prompty
-		// key, assuming that's a valid R variable
-		String rVar = setEl.getAttributeValue("rvar");
-		if(rVar == null)
-			rVar = promptKey;
-
 		// Find out what type of query it was so we know where setVar to call
 		PromptType promptType = answer.getType();
 		switch(promptType)
@@ -815,24 +912,24 @@ public class OperationXML extends Operation
 			case FIXED:
 			case NUMERIC:
 			case CHECKBOX:
-				proc.setVariable(rVar, answer.getAnswer());
+				proc.setVariable(set.rVar, answer.getAnswer());
 				break;
 
 			case COLUMN:
-				// Look for the modifier to only save the string
-				String useType = setEl.getAttributeValue("use", "values");
-				if(useType.equals("values"))
-				{
-					// Save all the values in the column
-					proc.setVariable(rVar, getParentData().getColumn((String)answer.getAnswer()));
-				}
-				else if(useType.equals("name"))
+				if(set.useName)
 				{
 					// Just save the column name
-					proc.setVariable(rVar, (String)answer.getAnswer());
+					proc.setVariable(set.rVar, (String)answer.getAnswer());
 				}
 				else
-					throw new OperationXMLException("Invalid setting '" + useType + "' for use attribute");
+				{
+					// Save all the values in the column
+					DataColumn col = getParentData().getColumn((String)answer.getAnswer());
+					if(col.isNumeric())
+						proc.setVariable(set.rVar, col.toDoubleArray());
+					else
+						proc.setVariable(set.rVar, col);
+				}
 				
 				break;
 
@@ -848,23 +945,16 @@ public class OperationXML extends Operation
 	 * Saves a given R variable to a column. Intended for saving the results of
 	 * a calculations
 	 * @param proc R process to pull data from
-	 * @param cmdEl Element containing the information about save
+	 * @param save Compiled information about save
 	 */
-	private void processSave(RProcessor proc, Element cmdEl)
+	private void processSave(RProcessor proc, SaveInstruction save)
 	{
-		// Get the command we will execute for the value
-		String cmd = cmdEl.getTextTrim();
-
 		// Determine the name of the column to save to
-		String colName = cmdEl.getAttributeValue("column");
+		String colName = save.column;
 		
 		// Dynamic one?
-		if(colName == null)
-		{
-			String dynamicColumnCmd = cmdEl.getAttributeValue("r-column");
-			if(dynamicColumnCmd != null)
-				colName = proc.executeString(dynamicColumnCmd);
-		}
+		if(colName == null && save.dynamicColumnCmd != null)
+			colName = proc.executeString(save.dynamicColumnCmd);
 		
 		// Just use the display name?
 		if(colName == null)
@@ -882,37 +972,39 @@ public class OperationXML extends Operation
 			col = addColumn(colName);
 		}
 
-		// Process the command we're saving
+		// Process the command we're saving. Large results come back in binary
 		proc.setRecorderMode(intendedRecordMode);
-		String result = proc.execute(cmd);
+		List<Object> result = proc.executeVector(save.cmd);
+		if(result.isEmpty())
+			throw new RProcessorParseException("The R result did not contain any values");
+		boolean isNumeric = result.get(0) instanceof Double;
 
-		String processAs = cmdEl.getAttributeValue("type", "auto");
-		if(processAs.equals("auto"))
+		switch(save.type)
 		{
-			try
-			{
+			case AUTO:
+				if(isNumeric)
+					col.setMode(DataColumn.DataMode.NUMERIC);
+				else
+					col.setMode(DataMode.STRING);
+				col.addAll(result);
+				break;
+
+			case NUMERIC:
+				if(!isNumeric)
+					throw new RProcessorParseException("The R result is not a vector of doubles");
+
 				col.setMode(DataColumn.DataMode.NUMERIC);
-				col.addAll(proc.parseDoubleArray(result));
-			}
-			catch(RProcessorParseException ex)
-			{
-				col.setMode(DataMode.STRING);
-				col.addAll(proc.parseStringArray(result));
-			}
-		}
-		else if(processAs.equals("numeric"))
-		{
-			col.setMode(DataColumn.DataMode.NUMERIC);
-			col.addAll(proc.parseDoubleArray(result));
-		}
+				col.addAll(result);
+				break;
 
-		else if(processAs.equals("string"))
-		{
-			col.setMode(DataMode.STRING);
-			col.addAll(proc.parseStringArray(result));
+			case STRING:
+				if(isNumeric)
+					throw new RProcessorParseException("The R result is not a vector of strings");
+
+				col.setMode(DataMode.STRING);
+				col.addAll(result);
+				break;
 		}
-		else
-			throw new OperationXMLException("Save type of '" + processAs + "' is unrecognized.");
 
 		// Disable recorder again
 		proc.setRecorderMode(RecordMode.DISABLED);
@@ -922,159 +1014,138 @@ public class OperationXML extends Operation
 	 * Processes the same sequence of commands repeatedly, setting the given R
 	 * variables with the current state of the loop
 	 * @param proc R process to work with
-	 * @param loopEl Element containing loop information
+	 * @param loop Compiled loop information
 	 */
-	private void processLoop(RProcessor proc, Element loopEl)
+	private void processLoop(RProcessor proc, LoopInstruction loop)
 	{
-		// Make up the loop we're going to work over and pass iteration back to processSequence()
-		String indexVar = loopEl.getAttributeValue("index-var");
-		String keyVar = loopEl.getAttributeValue("key-var");
-		String valueVar = loopEl.getAttributeValue("value-var");
-
-		// Process according to loop type
-		String loopType = loopEl.getAttributeValue("type");
-		if(loopType == null)
-			throw new OperationXMLException("No loop type specified");
-			
-		if(loopType.equals("parent"))
-		{
-			// Loop over every column in parent
-			for(int i = 0; i < getParentData().getColumnCount(); i++)
-			{
-				// Assign the loop key and value
-				proc.setRecorderMode(intendedRecordMode);
-				if(keyVar != null)
-					proc.setVariable(keyVar, getParentData().getColumn(i).getName());
-				if(indexVar != null)
-					proc.setVariable(indexVar, i + 1);
-				if(valueVar != null)
-					proc.setVariable(valueVar, getParentData().getColumn(i));
-				proc.setRecorderMode(RecordMode.DISABLED);
-
-				// Now do what the XML says
-				processSequence(proc, loopEl);
-			}
-		}
-		else if(loopType.equals("numeric"))
-		{
-			// Loop over an R vector, setting each element as the index var
-			List<Double> doubleVals = proc.executeDoubleArray(loopEl.getAttributeValue("loop-var"));
-			for(int i = 0; i < doubleVals.size(); i++)
-			{
-				// Assign the loop index
-				proc.setRecorderMode(intendedRecordMode);
-				if(indexVar != null)
-					proc.setVariable(indexVar, new Double(i + 1));
-				if(keyVar != null)
-					proc.setVariable(keyVar, new Double(i + 1));
-				if(valueVar != null)
-					proc.setVariable(valueVar, doubleVals.get(i));
-				proc.setRecorderMode(RecordMode.DISABLED);
-
-				// Now do what the XML says
-				processSequence(proc, loopEl);
-			}
-		}
-		else if(loopType.equals("string"))
+		// Process according to loop type, passing each iteration to the body
+		switch(loop.type)
 		{
-			// Loop over an R vector, setting each element as the index var
-			List<String> stringVals = proc.executeStringArray(loopEl.getAttributeValue("loop-var"));
-			for(int i = 0; i < stringVals.size(); i++)
-			{
-				// Assign the loop index
-				proc.setRecorderMode(intendedRecordMode);
-				if(indexVar != null)
-					proc.setVariable(indexVar, new Double(i + 1));
-				if(keyVar != null)
-					proc.setVariable(keyVar, new Double(i + 1));
-				if(valueVar != null)
-					proc.setVariable(valueVar, stringVals.get(i));
-				proc.setRecorderMode(RecordMode.DISABLED);
-
-				// Now do what the XML says
-				processSequence(proc, loopEl);
-			}
+			case PARENT:
+				// Loop over every column in parent
+				for(int i = 0; i < getParentData().getColumnCount(); i++)
+				{
+					// Assign the loop key and value
+					proc.setRecorderMode(intendedRecordMode);
+					if(loop.keyVar != null)
+						proc.setVariable(loop.keyVar, getParentData().getColumn(i).getName());
+					if(loop.indexVar != null)
+						proc.setVariable(loop.indexVar, i + 1);
+					if(loop.valueVar != null)
+						proc.setVariable(loop.valueVar, getParentData().getColumn(i));
+					proc.setRecorderMode(RecordMode.DISABLED);
+
+					// Now do what the XML says
+					loop.body.execute(this, proc);
+				}
+				break;
+
+			case NUMERIC:
+				// Loop over an R vector, setting each element as the index var
+				List<Double> doubleVals = proc.executeDoubleArray(loop.loopVar);
+				for(int i = 0; i < doubleVals.size(); i++)
+				{
+					// Assign the loop index
+					proc.setRecorderMode(intendedRecordMode);
+					if(loop.indexVar != null)
+						proc.setVariable(loop.indexVar, new Double(i + 1));
+					if(loop.keyVar != null)
+						proc.setVariable(loop.keyVar, new Double(i + 1));
+					if(loop.valueVar != null)
+						proc.setVariable(loop.valueVar, doubleVals.get(i));
+					proc.setRecorderMode(RecordMode.DISABLED);
+
+					// Now do what the XML says
+					loop.body.execute(this, proc);
+				}
+				break;
+
+			case STRING:
+				// Loop over an R vector, setting each element as the index var
+				List<String> stringVals = proc.executeStringArray(loop.loopVar);
+				for(int i = 0; i < stringVals.size(); i++)
+				{
+					// Assign the loop index
+					proc.setRecorderMode(intendedRecordMode);
+					if(loop.indexVar != null)
+						proc.setVariable(loop.indexVar, new Double(i + 1));
+					if(loop.keyVar != null)
+						proc.setVariable(loop.keyVar, new Double(i + 1));
+					if(loop.valueVar != null)
+						proc.setVariable(loop.valueVar, stringVals.get(i));
+					proc.setRecorderMode(RecordMode.DISABLED);
+
+					// Now do what the XML says
+					loop.body.execute(this, proc);
+				}
+				break;
 		}
-		else
-			throw new OperationXMLException("Loop type '" + loopType + "' not recognized.");
 	}
 
 	/**
 	 * Conditional. Based on the given expression (various kinds available),
 	 * executes either its then or else block.
 	 * @param proc R process to perform checks through
-	 * @param ifEl Element containing conditional specification
+	 * @param cond Compiled conditional specification
 	 */
-	private void processIf(RProcessor proc, Element ifEl)
+	private void processIf(RProcessor proc, IfInstruction cond)
 	{
-		// Figure out what type of if it is and check if it's true or false
+		// Check if the condition is true or false
 		boolean ifExprResult = false;
 
-		String expr = ifEl.getAttributeValue("expr");
-		String expectedVarType = ifEl.getAttributeValue("vartype");
-		String colExists = ifEl.getAttributeValue("colexists");
-
-		if(expr != null)
+		switch(cond.type)
 		{
-			try
-			{
-				// Custom expression, pass to R and return that
-				ifExprResult = proc.executeBoolean(expr);
-			}
-			catch(RProcessorParseException ex)
-			{
-				throw new OperationXMLException("If expression did not return a single boolean value", ex);
-			}
-		}
-		else if(expectedVarType != null)
-		{
-			// Get the type of the variable given in "rvar"
-			String var = ifEl.getAttributeValue("rvar");
-			String strResult = proc.execute("str(" + var + ")");
-			String realVarType = strResult.substring(1, 4);
+			case EXPR:
+				try
+				{
+					// Custom expression, pass to R and return that
+					ifExprResult = proc.executeBoolean(cond.expr);
+				}
+				catch(RProcessorParseException ex)
+				{
+					throw new OperationXMLException("If expression did not return a single boolean value", ex);
+				}
+				break;
 
-			// And ensure we match the expected value
-			if(expectedVarType.equals("numeric") && realVarType.equals("num"))
-				ifExprResult = true;
-			else if(expectedVarType.equals("string") && realVarType.equals("chr"))
-				ifExprResult = true;
-			else
-				ifExprResult = false;
-		}
-		else if(colExists != null)
-		{
-			// Does a column with that name exist yet?
-			if(getColumnIndex(colExists) != -1)
-				ifExprResult = true;
-			else
-				ifExprResult = false;
+			case VARTYPE:
+				// Get the type of the variable given in "rvar"
+				String strResult = proc.execute("str(" + cond.rVar + ")");
+				String realVarType = strResult.substring(1, 4);
+
+				// And ensure we match the expected value
+				if(cond.expectedVarType.equals("numeric") && realVarType.equals("num"))
+					ifExprResult = true;
+				else if(cond.expectedVarType.equals("string") && realVarType.equals("chr"))
+					ifExprResult = true;
+				else
+					ifExprResult = false;
+				break;
+
+			case COLEXISTS:
+				// Does a column with that name exist yet?
+				ifExprResult = (getColumnIndex(cond.colExists) != -1);
+				break;
 		}
-		else
-			throw new OperationXMLException("If type not recognized.");
 
-		// Run then then/else blocks as appropriate
+		// Run then then/else blocks as appropriate, if they exist
 		if(ifExprResult)
 		{
-			// Is there a then?
-			Element thenEl = ifEl.getChild("then");
-			if(thenEl != null)
-				processSequence(proc, thenEl);
+			if(cond.thenBody != null)
+				cond.thenBody.execute(this, proc);
 		}
 		else
 		{
-			// Is there an else?
-			Element elseEl = ifEl.getChild("else");
-			if(elseEl != null)
-				processSequence(proc, elseEl);
+			if(cond.elseBody != null)
+				cond.elseBody.execute(this, proc);
 		}
 	}
 
 	/**
 	 * Takes a command inside it and converts the text output to an image
 	 * @param proc R process to pass command through
-	 * @param fakeEl Element containing the string R command to convert to an image
+	 * @param fake Compiled R command to convert to an image
 	 */
-	private void processFakePlot(RProcessor proc, Element fakeEl)
+	private void processFakePlot(RProcessor proc, FakePlotInstruction fake)
 	{
 		// An operation may only have one plot/fake plot in it
 		if(plotPath != null)
@@ -1082,7 +1153,7 @@ public class OperationXML extends Operation
 
 		// Get the string we're converting to an image
 		RecordMode oldMode = proc.setRecorderMode(RecordMode.CMDS_ONLY);
-		String textLeaf = proc.execute(fakeEl.getText()).trim();
+		String textLeaf = proc.execute(fake.cmd).trim();
 		proc.setRecorderMode(oldMode);
 		
 		// How tall and wide is the plot?
@@ -1175,9 +1246,9 @@ public class OperationXML extends Operation
 	 * the end of the sequence, the plot is finished and the results saved 
 	 * as the plot for the operation. May only be executed once in an operation
 	 * @param proc R process to work get plot from
-	 * @param plotEl Element containing plot commands
+	 * @param plot Compiled plot commands
 	 */
-	private void processPlot(RProcessor proc, Element plotEl)
+	private void processPlot(RProcessor proc, PlotInstruction plot)
 	{
 		// An operation may only have one plot in it
 		if(plotPath != null)
@@ -1185,45 +1256,24 @@ public class OperationXML extends Operation
 
 		// Plot away
 		plotPath = new File(proc.startGraphicOutput());
-		processSequence(proc, plotEl);
+		plot.body.execute(this, proc);
 		proc.stopGraphicOutput();
 	}
 
-	/**
-	 * Terminates the operation processing, sending the given message as
-	 * an exception, likely to be shown to the user.
-	 * @param proc R process to work with if needed
-	 * @param errorEl Element containing message to pass to user
-	 */
-	private void processError(RProcessor proc, Element errorEl)
-	{
-		// The operation wants us to throw an error to the user
-		String msg = errorEl.getAttributeValue("msg", "");
-		if(msg != null)
-			throw new OperationXMLException(msg);
-		else
-			throw new OperationXMLException("No message supplied for error");
-	}
-
 	/**
 	 * Loads a library into R. If it is not installed, it attempts to install
 	 * it automatically.
 	 * @param proc R process to load library into
-	 * @param loadEl Element containing library to load
+	 * @param load Compiled library to load
 	 */
-	private void processLoad(RProcessor proc, Element loadEl)
+	private void processLoad(RProcessor proc, LoadInstruction load)
 	{
 		// Find what library the operation wants to load
-		String libToLoad = loadEl.getAttributeValue("library");
+		String libToLoad = load.library;
 		if(libToLoad == null)
 		{
-			// Ok, try for a dynamic version then
-			String dynamicName = loadEl.getAttributeValue("r-library");
-			if(dynamicName == null)
-				throw new OperationXMLException("No library specified for load");
-
-			// Actually find the string in that variable
-			libToLoad = proc.executeString(dynamicName);
+			// Actually find the string in the dynamic variable
+			libToLoad = proc.executeString(load.dynamicName);
 		}
 
 		if(!proc.loadLibrary(libToLoad))
@@ -1350,6 +1400,43 @@ public class OperationXML extends Operation
 		return plotPath.getAbsolutePath();
 	}
 
+	@Override
+	protected String getConfigSignature()
+	{
+		// Operations drawing random samples mark themselves with cache="false"
+		if("false".equals(opConfig.getAttributeValue("cache")))
+			return null;
+
+		return new XMLOutputter(Format.getCompactFormat()).outputString(opConfig);
+	}
+
+	@Override
+	protected File getPlotFile()
+	{
+		return plotPath;
+	}
+
+	@Override
+	protected void restorePlotFile(byte[] plot)
+	{
+		// Whatever plot the previous configuration made no longer applies
+		plotPath = null;
+		if(plot == null)
+			return;
+
+		try
+		{
+			plotPath = File.createTempFile("marla", ".png");
+			plotPath.deleteOnExit();
+			FileUtils.writeByteArrayToFile(plotPath, plot);
+		}
+		catch(IOException ex)
+		{
+			plotPath = null;
+			throw new OperationException("Unable to restore saved plot", ex);
+		}
+	}
+
 	@Override
 	public OperationXML clone()
 	{
@@ -1405,4 +1492,315 @@ public class OperationXML extends Operation
 		// Load the correct XML specification
 		setConfiguration(findConfiguration(extraEl.getAttributeValue("name")));
 	}
+
+	/**
+	 * A single command or control structure from an operation's computation,
+	 * compiled from its XML. Instructions never change once compiled, so the
+	 * same one may be run by many operations at once
+	 */
+	private static abstract class Instruction
+	{
+		/**
+		 * Performs this instruction for the given operation
+		 * @param op Operation being computed
+		 * @param proc R process to work through
+		 */
+		abstract void execute(OperationXML op, RProcessor proc);
+	}
+
+	/**
+	 * Runs each compiled child of an element in turn
+	 */
+	private static final class Sequence extends Instruction
+	{
+		private final Instruction[] instructions;
+
+		Sequence(Element parentEl)
+		{
+			List<Instruction> compiled = new ArrayList<Instruction>();
+			for(Object elObj : parentEl.getChildren())
+				compiled.add(compile((Element) elObj));
+
+			instructions = compiled.toArray(new Instruction[compiled.size()]);
+		}
+
+		@Override
+		void execute(OperationXML op, RProcessor proc)
+		{
+			for(Instruction instruction : instructions)
+				instruction.execute(op, proc);
+		}
+	}
+
+	/**
+	 * Compiled cmd element
+	 */
+	private static final class CmdInstruction extends Instruction
+	{
+		private final String cmd;
+
+		CmdInstruction(Element cmdEl)
+		{
+			cmd = cmdEl.getTextTrim();
+		}
+
+		@Override
+		void execute(OperationXML op, RProcessor proc)
+		{
+			op.processCmd(proc, this);
+		}
+	}
+
+	/**
+	 * Compiled set element
+	 */
+	private static final class SetInstruction extends Instruction
+	{
+		private final String promptKey;
+		private final String rVar;
+		private final boolean useName;
+
+		SetInstruction(Element setEl)
+		{
+			// What answer are we looking for here?
+			promptKey = setEl.getAttributeValue("name");
+			if(promptKey == null)
+				throw new OperationXMLException("XML specification does not mark '" + promptKey + "' as required information but uses it in computation.");
+
+			// If no name is given, use the prompt key, assuming that's a valid R variable
+			String var = setEl.getAttributeValue("rvar");
+			if(var == null)
+				var = promptKey;
+			rVar = var;
+
+			// Column prompts may save just the name rather than the values
+			String useType = setEl.getAttributeValue("use", "values");
+			if(useType.equals("values"))
+				useName = false;
+			else if(useType.equals("name"))
+				useName = true;
+			else
+				throw new OperationXMLException("Invalid setting '" + useType + "' for use attribute");
+		}
+
+		@Override
+		void execute(OperationXML op, RProcessor proc)
+		{
+			op.processSet(proc, this);
+		}
+	}
+
+	/**
+	 * How a save element interprets the R result
+	 */
+	private enum SaveType { AUTO, NUMERIC, STRING }
+
+	/**
+	 * Compiled save element
+	 */
+	private static final class SaveInstruction extends Instruction
+	{
+		private final String cmd;
+		private final String column;
+		private final String dynamicColumnCmd;
+		private final SaveType type;
+
+		SaveInstruction(Element saveEl)
+		{
+			cmd = saveEl.getTextTrim();
+			column = saveEl.getAttributeValue("column");
+			dynamicColumnCmd = saveEl.getAttributeValue("r-column");
+
+			String processAs = saveEl.getAttributeValue("type", "auto");
+			if(processAs.equals("auto"))
+				type = SaveType.AUTO;
+			else if(processAs.equals("numeric"))
+				type = SaveType.NUMERIC;
+			else if(processAs.equals("string"))
+				type = SaveType.STRING;
+			else
+				throw new OperationXMLException("Save type of '" + processAs + "' is unrecognized.");
+		}
+
+		@Override
+		void execute(OperationXML op, RProcessor proc)
+		{
+			op.processSave(proc, this);
+		}
+	}
+
+	/**
+	 * What a loop element iterates over
+	 */
+	private enum LoopType { PARENT, NUMERIC, STRING }
+
+	/**
+	 * Compiled loop element
+	 */
+	private static final class LoopInstruction extends Instruction
+	{
+		private final String indexVar;
+		private final String keyVar;
+		private final String valueVar;
+		private final String loopVar;
+		private final LoopType type;
+		private final Sequence body;
+
+		LoopInstruction(Element loopEl)
+		{
+			indexVar = loopEl.getAttributeValue("index-var");
+			keyVar = loopEl.getAttributeValue("key-var");
+			valueVar = loopEl.getAttributeValue("value-var");
+			loopVar = loopEl.getAttributeValue("loop-var");
+
+			String loopType = loopEl.getAttributeValue("type");
+			if(loopType == null)
+				throw new OperationXMLException("No loop type specified");
+			else if(loopType.equals("parent"))
+				type = LoopType.PARENT;
+			else if(loopType.equals("numeric"))
+				type = LoopType.NUMERIC;
+			else if(loopType.equals("string"))
+				type = LoopType.STRING;
+			else
+				throw new OperationXMLException("Loop type '" + loopType + "' not recognized.");
+
+			body = new Sequence(loopEl);
+		}
+
+		@Override
+		void execute(OperationXML op, RProcessor proc)
+		{
+			op.processLoop(proc, this);
+		}
+	}
+
+	/**
+	 * Kind of check an if element performs
+	 */
+	private enum IfType { EXPR, VARTYPE, COLEXISTS }
+
+	/**
+	 * Compiled if element
+	 */
+	private static final class IfInstruction extends Instruction
+	{
+		private final IfType type;
+		private final String expr;
+		private final String expectedVarType;
+		private final String rVar;
+		private final String colExists;
+		private final Sequence thenBody;
+		private final Sequence elseBody;
+
+		IfInstruction(Element ifEl)
+		{
+			expr = ifEl.getAttributeValue("expr");
+			expectedVarType = ifEl.getAttributeValue("vartype");
+			rVar = ifEl.getAttributeValue("rvar");
+			colExists = ifEl.getAttributeValue("colexists");
+
+			if(expr != null)
+				type = IfType.EXPR;
+			else if(expectedVarType != null)
+				type = IfType.VARTYPE;
+			else if(colExists != null)
+				type = IfType.COLEXISTS;
+			else
+				throw new OperationXMLException("If type not recognized.");
+
+			Element thenEl = ifEl.getChild("then");
+			thenBody = (thenEl != null) ? new Sequence(thenEl) : null;
+
+			Element elseEl = ifEl.getChild("else");
+			elseBody = (elseEl != null) ? new Sequence(elseEl) : null;
+		}
+
+		@Override
+		void execute(OperationXML op, RProcessor proc)
+		{
+			op.processIf(proc, this);
+		}
+	}
+
+	/**
+	 * Compiled fake-plot element
+	 */
+	private static final class FakePlotInstruction extends Instruction
+	{
+		private final String cmd;
+
+		FakePlotInstruction(Element fakeEl)
+		{
+			cmd = fakeEl.getText();
+		}
+
+		@Override
+		void execute(OperationXML op, RProcessor proc)
+		{
+			op.processFakePlot(proc, this);
+		}
+	}
+
+	/**
+	 * Compiled plot element
+	 */
+	private static final class PlotInstruction extends Instruction
+	{
+		private final Sequence body;
+
+		PlotInstruction(Element plotEl)
+		{
+			body = new Sequence(plotEl);
+		}
+
+		@Override
+		void execute(OperationXML op, RProcessor proc)
+		{
+			op.processPlot(proc, this);
+		}
+	}
+
+	/**
+	 * Compiled error element. Terminates the operation processing, sending
+	 * the given message as an exception, likely to be shown to the user.
+	 */
+	private static final class ErrorInstruction extends Instruction
+	{
+		private final String msg;
+
+		ErrorInstruction(Element errorEl)
+		{
+			msg = errorEl.getAttributeValue("msg", "");
+		}
+
+		@Override
+		void execute(OperationXML op, RProcessor proc)
+		{
+			throw new OperationXMLException(msg);
+		}
+	}
+
+	/**
+	 * Compiled load element
+	 */
+	private static final class LoadInstruction extends Instruction
+	{
+		private final String library;
+		private final String dynamicName;
+
+		LoadInstruction(Element loadEl)
+		{
+			library = loadEl.getAttributeValue("library");
+			dynamicName = loadEl.getAttributeValue("r-library");
+			if(library == null && dynamicName == null)
+				throw new OperationXMLException("No library specified for load");
+		}
+
+		@Override
+		void execute(OperationXML op, RProcessor proc)
+		{
+			op.processLoad(proc, this);
+		}
+	}
 }
@@ -0,0 +1,333 @@
+/*
+ * The maRla Project - Graphical problem solver for statistical calculations.
+ * Copyright © 2011 Cedarville University
+ * http://marla.googlecode.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package marla.ide.operation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import marla.ide.problem.InternalMarlaException;
+import marla.ide.resource.Configuration.ConfigType;
+import marla.ide.resource.ConfigurationException;
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.JDOMException;
+import org.jdom.input.SAXBuilder;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * A single file of XML operations. When first loaded only the name, categories,
+ * and list flag of each operation are read, which is all that is needed to
+ * show them to the user. The full definitions are parsed the first time one
+ * of the operations is actually created.
+ * @author Ryan Morehart
+ */
+final class OperationXMLFile
+{
+	/**
+	 * Location of the file on disk
+	 */
+	private final String path;
+	/**
+	 * true if this is the primary (maRla-supplied) operation file
+	 */
+	private final boolean isPrimary;
+	/**
+	 * Summary of each operation in the file, in file order
+	 */
+	private final List<Summary> summaries;
+	/**
+	 * Full definitions of each operation in the file by name, null until needed
+	 */
+	private Map<String, Element> definitions = null;
+
+	/**
+	 * Name, categories, list flag, and libraries of a single operation in the file
+	 */
+	static final class Summary
+	{
+		/**
+		 * Name of the operation
+		 */
+		final String name;
+		/**
+		 * True if the operation should be shown to the user
+		 */
+		final boolean listed;
+		/**
+		 * Categories the operation should appear in
+		 */
+		final List<String> categories;
+		/**
+		 * R libraries the operation loads by name
+		 */
+		final List<String> libraries;
+
+		private Summary(String name, boolean listed, List<String> categories, List<String> libraries)
+		{
+			this.name = name;
+			this.listed = listed;
+			this.categories = Collections.unmodifiableList(categories);
+			this.libraries = Collections.unmodifiableList(libraries);
+		}
+	}
+
+	/**
+	 * Reads the summary of each operation in the given file. An exception is
+	 * thrown if the file cannot be read or is not an operation file
+	 * @param path Path to the operation XML file
+	 * @param isPrimary true if this file is the primary (base). false if it's secondary/user supplied
+	 */
+	OperationXMLFile(String path, boolean isPrimary)
+	{
+		this.path = path;
+		this.isPrimary = isPrimary;
+
+		// Make sure we know where we're looking
+		if(path == null)
+		{
+			if(isPrimary)
+				throw new ConfigurationException("XML file for operations has not been specified", ConfigType.PrimaryOpsXML);
+			else
+				throw new ConfigurationException("Null name for user XML operations given", ConfigType.UserOpsXML);
+		}
+
+		try
+		{
+			SummaryHandler handler = new SummaryHandler();
+			SAXParserFactory.newInstance().newSAXParser().parse(new File(path), handler);
+			summaries = handler.found;
+		}
+		catch(NotOperationsException ex)
+		{
+			throw new ConfigurationException("XML file '" + path + "' does not appear to contain operations", getConfigType());
+		}
+		catch(SAXException ex)
+		{
+			throw new OperationXMLException("Operation XML file '" + path + "' contains XML error(s)", ex);
+		}
+		catch(ParserConfigurationException ex)
+		{
+			throw new InternalMarlaException("Unable to create XML parser for operations", ex);
+		}
+		catch(IOException ex)
+		{
+			throw readError(ex);
+		}
+	}
+
+	/**
+	 * Returns the summary of each operation in the file, in the order they appear
+	 * @return List of operation summaries
+	 */
+	List<Summary> getSummaries()
+	{
+		return summaries;
+	}
+
+	/**
+	 * Returns the full definition of the named operation, parsing the file
+	 * if this is the first definition asked for. If the file contains more
+	 * than one operation with the name, the first is used
+	 * @param name Name of the operation to find
+	 * @return Element holding the configuration information for the operation
+	 */
+	synchronized Element getDefinition(String name)
+	{
+		if(definitions == null)
+		{
+			try
+			{
+				SAXBuilder parser = new SAXBuilder();
+				Document doc = parser.build(new File(path));
+
+				definitions = new HashMap<String, Element>();
+				for(Object opObj : doc.getRootElement().getChildren("operation"))
+				{
+					Element opEl = (Element) opObj;
+					String opName = opEl.getAttributeValue("name");
+					if(opName != null && !definitions.containsKey(opName))
+						definitions.put(opName, opEl);
+				}
+			}
+			catch(JDOMException ex)
+			{
+				throw new OperationXMLException("Operation XML file '" + path + "' contains XML error(s)", ex);
+			}
+			catch(IOException ex)
+			{
+				throw readError(ex);
+			}
+		}
+
+		Element opEl = definitions.get(name);
+		if(opEl == null)
+			throw new OperationXMLException("Unable to locate operation '" + name + "'");
+
+		return opEl;
+	}
+
+	/**
+	 * Returns the configuration option that points at this file
+	 * @return Primary or user operation XML configuration type
+	 */
+	private ConfigType getConfigType()
+	{
+		if(isPrimary)
+			return ConfigType.PrimaryOpsXML;
+		else
+			return ConfigType.UserOpsXML;
+	}
+
+	/**
+	 * Creates the exception for an inability to read this file
+	 * @param ex Exception that occurred while reading
+	 * @return Exception to throw
+	 */
+	private ConfigurationException readError(IOException ex)
+	{
+		if(isPrimary)
+			return new ConfigurationException("Unable to read the primary operation XML file '" + path + "'", getConfigType(), ex);
+		else
+			return new ConfigurationException("Unable to read the user operation XML file '" + path + "'", getConfigType(), ex);
+	}
+
+	/**
+	 * Signals that the root element of the file is not "operations"
+	 */
+	private static class NotOperationsException extends SAXException
+	{
+		/**
+		 * STOP WHINING JAVA!
+		 */
+		private static final long serialVersionUID = 2790341868025341L;
+
+		NotOperationsException()
+		{
+			super("Not an operation file");
+		}
+	}
+
+	/**
+	 * Collects operation summaries as the file is parsed, ignoring everything
+	 * but operation, category, and load elements
+	 */
+	private class SummaryHandler extends DefaultHandler
+	{
+		/**
+		 * Summaries found so far
+		 */
+		private final List<Summary> found = new ArrayList<Summary>();
+		/**
+		 * Depth of the current element, with the root at 1
+		 */
+		private int depth = 0;
+		/**
+		 * Operation currently being read, null if not inside one
+		 */
+		private String opName = null;
+		/**
+		 * List flag of the operation currently being read
+		 */
+		private boolean opListed = true;
+		/**
+		 * Categories of the operation currently being read
+		 */
+		private List<String> opCategories = null;
+		/**
+		 * Libraries loaded by the operation currently being read
+		 */
+		private List<String> opLibraries = null;
+		/**
+		 * Text of the category currently being read, null if not inside one
+		 */
+		private StringBuilder catText = null;
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException
+		{
+			depth++;
+
+			if(depth == 1)
+			{
+				// It is an operation file, right?
+				if(!qName.equals("operations"))
+					throw new NotOperationsException();
+			}
+			else if(depth == 2 && qName.equals("operation"))
+			{
+				opName = attributes.getValue("name");
+				if(opName == null && isPrimary)
+					throw new OperationXMLException("No name supplied for operation in XML file");
+
+				String list = attributes.getValue("list");
+				opListed = (list == null || Boolean.parseBoolean(list));
+				opCategories = new ArrayList<String>();
+				opLibraries = new ArrayList<String>();
+			}
+			else if(depth == 3 && opCategories != null && qName.equals("category"))
+				catText = new StringBuilder();
+			else if(depth > 2 && opLibraries != null && qName.equals("load"))
+			{
+				// Only fixed names can be known ahead of time
+				String lib = attributes.getValue("library");
+				if(lib != null && !opLibraries.contains(lib))
+					opLibraries.add(lib);
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length)
+		{
+			if(catText != null)
+				catText.append(ch, start, length);
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName)
+		{
+			if(depth == 3 && catText != null)
+			{
+				// Same as JDOM's getTextNormalize()
+				opCategories.add(catText.toString().trim().replaceAll("\\s+", " "));
+				catText = null;
+			}
+			else if(depth == 2 && opCategories != null)
+			{
+				// User files may contain unnamed operations, they are just ignored
+				if(opName != null)
+					found.add(new Summary(opName, opListed, opCategories, opLibraries));
+
+				opName = null;
+				opCategories = null;
+				opLibraries = null;
+			}
+
+			depth--;
+		}
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * The maRla Project - Graphical problem solver for statistical calculations.
+ * Copyright © 2011 Cedarville University
+ * http://marla.googlecode.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package marla.ide.problem;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import org.apache.commons.io.IOUtils;
+import org.jdom.Document;
+import org.jdom.JDOMException;
+import org.jdom.input.SAXBuilder;
+import org.jdom.output.XMLOutputter;
+
+/**
+ * Saves and loads problems in a compact binary form. The structure of the
+ * problem (statement, operations, subproblems, column names and modes) is
+ * kept as the same XML used by normal save files, but the column values are
+ * written afterward as blocks of raw doubles or dictionary encoded strings
+ * rather than one element per value. Everything after the header is compressed.
+ *
+ * Files in this form are chosen by their extension when saving and recognized
+ * by their header when loading.
+ * @author Ryan Morehart
+ */
+final class BinaryProblemFile
+{
+	/**
+	 * Extension which selects this format when saving
+	 */
+	static final String EXTENSION = ".marlab";
+	/**
+	 * Marks the start of every binary problem file
+	 */
+	private static final byte[] MAGIC = {'M', 'A', 'R', 'L', 'A', 'B'};
+	/**
+	 * Layout version, increased whenever the layout changes incompatibly
+	 */
+	private static final int FORMAT_VERSION = 1;
+	/**
+	 * Size of the buffers used around the compressed stream
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Not meant to be created
+	 */
+	private BinaryProblemFile()
+	{
+	}
+
+	/**
+	 * Checks if the given file name should be saved in the binary format
+	 * @param fileName Path to check
+	 * @return true if the name has the binary extension
+	 */
+	static boolean isBinaryName(String fileName)
+	{
+		return fileName.toLowerCase().endsWith(EXTENSION);
+	}
+
+	/**
+	 * Checks if the given file is in the binary format, regardless of its name
+	 * @param fileName Path of the file to check
+	 * @return true if the file starts with the binary header
+	 * @throws IOException Thrown if the file can't be read
+	 */
+	static boolean isBinaryFile(String fileName) throws IOException
+	{
+		InputStream is = new FileInputStream(fileName);
+		try
+		{
+			return hasMagic(is);
+		}
+		finally
+		{
+			IOUtils.closeQuietly(is);
+		}
+	}
+
+	/**
+	 * Reads the header from the given stream and checks it is the one
+	 * binary problem files start with
+	 * @param is Stream to read from, positioned at the start of the file
+	 * @return true if the header matches
+	 * @throws IOException Thrown if the stream can't be read
+	 */
+	private static boolean hasMagic(InputStream is) throws IOException
+	{
+		byte[] start = new byte[MAGIC.length];
+		int read = 0;
+		while(read < start.length)
+		{
+			int count = is.read(start, read, start.length - read);
+			if(count == -1)
+				return false;
+			read += count;
+		}
+
+		return Arrays.equals(start, MAGIC);
+	}
+
+	/**
+	 * Writes the given problem to the file
+	 * @param prob Problem to save
+	 * @param fileName Path of the file to write. It will be overwritten
+	 * @throws IOException Thrown if the file can't be written
+	 */
+	static void write(Problem prob, String fileName) throws IOException
+	{
+		// Structure first, so the values can be read as the columns are created
+		byte[] structure = new XMLOutputter().outputString(new Document(prob.toXml(false))).getBytes("UTF-8");
+
+		OutputStream fileOut = new FileOutputStream(fileName);
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try
+		{
+			fileOut.write(MAGIC);
+
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					new DeflaterOutputStream(fileOut, deflater, BUFFER_SIZE), BUFFER_SIZE));
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(structure.length);
+			out.write(structure);
+
+			// Then each column's values, in the order they appear in the XML
+			for(int i = 0; i < prob.getDataCount(); i++)
+			{
+				DataSet ds = prob.getData(i);
+				for(int j = 0; j < ds.getColumnCount(); j++)
+					ds.getColumn(j).writeValues(out);
+			}
+
+			out.close();
+		}
+		finally
+		{
+			IOUtils.closeQuietly(fileOut);
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Reads a problem from the given binary file
+	 * @param fileName Path of the file to read
+	 * @return Restored problem
+	 * @throws IOException Thrown if the file can't be read or is not a binary problem file
+	 * @throws JDOMException Thrown if the problem structure is invalid
+	 */
+	static Problem read(String fileName) throws IOException, JDOMException
+	{
+		InputStream fileIn = new FileInputStream(fileName);
+		Inflater inflater = new Inflater();
+		try
+		{
+			if(!hasMagic(fileIn))
+				throw new IOException("'" + fileName + "' is not a binary problem file");
+
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new InflaterInputStream(fileIn, inflater, BUFFER_SIZE), BUFFER_SIZE));
+
+			int version = in.readInt();
+			if(version != FORMAT_VERSION)
+				throw new IOException("Binary problem file version " + version + " is not supported");
+
+			byte[] structure = new byte[in.readInt()];
+			in.readFully(structure);
+			Document doc = new SAXBuilder().build(new ByteArrayInputStream(structure));
+
+			// Values follow in the same order the columns are created
+			return Problem.fromXml(doc.getRootElement(), new ColumnValueSource()
+			{
+				@Override
+				public void readValues(DataColumn col) throws IOException
+				{
+					col.readValues(in);
+				}
+			});
+		}
+		finally
+		{
+			IOUtils.closeQuietly(fileIn);
+			inflater.end();
+		}
+	}
+}
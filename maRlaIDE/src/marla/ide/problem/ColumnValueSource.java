@@ -0,0 +1,38 @@
+/*
+ * The maRla Project - Graphical problem solver for statistical calculations.
+ * Copyright © 2011 Cedarville University
+ * http://marla.googlecode.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package marla.ide.problem;
+
+import java.io.IOException;
+
+/**
+ * Supplies the values of each column as a problem is loaded, when they are
+ * stored somewhere other than the problem's XML tree. Columns are asked for
+ * in the order they appear in the problem
+ * @author Ryan Morehart
+ */
+interface ColumnValueSource
+{
+	/**
+	 * Fills the given, newly created column with its saved values
+	 * @param col Column to fill
+	 * @throws IOException Thrown if the values can't be read
+	 */
+	void readValues(DataColumn col) throws IOException;
+}
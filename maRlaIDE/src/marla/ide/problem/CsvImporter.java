@@ -0,0 +1,896 @@
+/*
+ * The maRla Project - Graphical problem solver for statistical calculations.
+ * Copyright © 2011 Cedarville University
+ * http://marla.googlecode.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package marla.ide.problem;
+
+import java.io.CharArrayReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import marla.ide.gui.Domain;
+import marla.ide.problem.DataColumn.DataMode;
+
+/**
+ * Reads a CSV file into a new DataSet in a single streaming pass. Cells may be
+ * separated by commas or semicolons and may be wrapped in double or single quotes,
+ * in which case they may contain separators, line breaks, and doubled quotes.
+ * The type of each column is decided as values are read, so numeric columns
+ * are never held as text and every column is filled with one bulk append.
+ *
+ * Files larger than the parallel threshold are memory mapped and split into
+ * chunks on line boundaries, which are parsed at the same time and joined
+ * afterward. If any quoted cell turns out to span lines the chunks can't be
+ * trusted and the file is read start to finish instead.
+ * @author Ryan Morehart
+ */
+final class CsvImporter
+{
+	/**
+	 * Number of characters to read from the file at once
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+	/**
+	 * Largest chunk of the file parsed by a single task during a parallel import
+	 */
+	private static final long MAX_CHUNK_SIZE = 32 * 1024 * 1024;
+	/**
+	 * Number of bytes decoded when looking for the end of the header row
+	 */
+	private static final int HEADER_SEARCH_SIZE = 1024 * 1024;
+	/**
+	 * Files at least this many bytes long are imported in parallel chunks
+	 */
+	private static long parallelThreshold = 64 * 1024 * 1024;
+	/**
+	 * File being imported
+	 */
+	private final File file;
+	/**
+	 * Reader for the file, open only while a pass is in progress
+	 */
+	private Reader in = null;
+	/**
+	 * Characters read from the file but not yet parsed
+	 */
+	private final char[] buffer = new char[BUFFER_SIZE];
+	/**
+	 * Position of the next character to parse in buffer
+	 */
+	private int pos = 0;
+	/**
+	 * Number of valid characters in buffer
+	 */
+	private int limit = 0;
+	/**
+	 * Total number of characters read from the file this pass, for progress
+	 */
+	private long charsRead = 0;
+	/**
+	 * Last percentage reported to the progress bar
+	 */
+	private int lastProgress = -1;
+	/**
+	 * Cells of the row most recently read
+	 */
+	private final List<String> cells = new ArrayList<String>();
+	/**
+	 * Whether each cell of the row most recently read was quoted
+	 */
+	private final List<Boolean> quoted = new ArrayList<Boolean>();
+	/**
+	 * Builds up the cell currently being read
+	 */
+	private final StringBuilder cell = new StringBuilder();
+	/**
+	 * Set if a quoted cell contained a line break or was never closed, in
+	 * which case lines of the file are not necessarily rows
+	 */
+	private boolean spansLines = false;
+
+	/**
+	 * Creates a new importer for the given file
+	 * @param file CSV file to read
+	 */
+	CsvImporter(File file)
+	{
+		this.file = file;
+	}
+
+	/**
+	 * Creates a tokenizer for one chunk of the given file
+	 * @param file CSV file the chunk came from
+	 * @param in Reader over the chunk
+	 */
+	private CsvImporter(File file, Reader in)
+	{
+		this.file = file;
+		this.in = in;
+	}
+
+	/**
+	 * Sets the file size at which imports switch to parsing chunks of the
+	 * file in parallel
+	 * @param newThreshold Size in bytes
+	 * @return Previously set threshold
+	 */
+	static long setParallelThreshold(long newThreshold)
+	{
+		long old = parallelThreshold;
+		parallelThreshold = newThreshold;
+		return old;
+	}
+
+	/**
+	 * Returns the file size at which imports switch to parsing chunks of the
+	 * file in parallel
+	 * @return Size in bytes
+	 */
+	static long getParallelThreshold()
+	{
+		return parallelThreshold;
+	}
+
+	/**
+	 * Reads the file into a new DataSet named after the file. If the first row
+	 * begins with a number it is treated as data and the columns are named
+	 * "Column 1", "Column 2", etc. Otherwise it gives the column names.
+	 * @return Newly created DataSet holding the file's values
+	 */
+	DataSet importData() throws IOException
+	{
+		// Read the header and all values. Columns that turn out to be text
+		// after starting with numbers don't have their original text, so they
+		// need a second trip through the file
+		List<String> names = new ArrayList<String>();
+		List<ColumnBuffer> cols = new ArrayList<ColumnBuffer>();
+		Boolean parallelHeader = null;
+		if(file.length() >= parallelThreshold)
+			parallelHeader = readFileParallel(names, cols);
+
+		boolean hasHeader;
+		if(parallelHeader != null)
+		{
+			hasHeader = parallelHeader;
+		}
+		else
+		{
+			names.clear();
+			cols.clear();
+			hasHeader = readFile(names, cols, null);
+		}
+
+		boolean[] reread = new boolean[cols.size()];
+		boolean needReread = false;
+		for(int i = 0; i < cols.size(); i++)
+		{
+			reread[i] = cols.get(i).lostText;
+			needReread |= reread[i];
+		}
+
+		if(needReread)
+		{
+			Domain.setProgressStatus("Reading text columns...");
+			for(int i = 0; i < cols.size(); i++)
+			{
+				if(reread[i])
+					cols.set(i, new ColumnBuffer(false));
+			}
+
+			readFile(null, cols, reread);
+		}
+
+		// Build the DataSet, filling each column in one go
+		DataSet ds = new DataSet(file.getName());
+		for(int i = 0; i < cols.size(); i++)
+		{
+			String name;
+			if(hasHeader)
+				name = names.get(i);
+			else
+				name = "Column " + (i + 1);
+
+			DataColumn dc = ds.addColumn(name);
+			ColumnBuffer col = cols.get(i);
+			if(col.isNumeric)
+			{
+				dc.setMode(DataMode.NUMERIC);
+				dc.addAll(Arrays.copyOf(col.numbers, col.numberCount));
+			}
+			else
+			{
+				dc.setMode(DataMode.STRING);
+				dc.addAll(col.strings);
+			}
+		}
+
+		return ds;
+	}
+
+	/**
+	 * Makes one pass through the file, adding the values of each row to the
+	 * column buffers. On the first pass, names and cols are filled in from the
+	 * first row. On later passes only the flagged columns are filled
+	 * @param names List to place the header names in, null if not the first pass
+	 * @param cols Buffers to add values to, one per column
+	 * @param only Columns to fill, null to fill all of them
+	 * @return true if the first row of the file is a header
+	 */
+	private boolean readFile(List<String> names, List<ColumnBuffer> cols, boolean[] only) throws IOException
+	{
+		pos = 0;
+		limit = 0;
+		charsRead = 0;
+		lastProgress = -1;
+		in = new FileReader(file);
+
+		try
+		{
+			if(!readRow())
+				throw new MarlaException("Import file '" + file.getName() + "' is empty");
+
+			// Trailing empty cells aren't columns
+			int colCount = cells.size();
+			while(colCount > 1 && cells.get(colCount - 1).isEmpty() && !quoted.get(colCount - 1))
+				colCount--;
+
+			// If the first cell works as a number then there's no header
+			boolean hasHeader = quoted.get(0) || !isNumber(cells.get(0));
+
+			if(names != null)
+			{
+				for(int i = 0; i < colCount; i++)
+				{
+					cols.add(new ColumnBuffer(true));
+					if(hasHeader)
+						names.add(cells.get(i));
+				}
+			}
+
+			// The first row is data if it wasn't names
+			int row = 1;
+			if(!hasHeader)
+				addRow(cols, only, row);
+
+			while(readRow())
+			{
+				row++;
+				addRow(cols, only, row);
+				updateProgress();
+			}
+
+			return hasHeader;
+		}
+		finally
+		{
+			in.close();
+			in = null;
+		}
+	}
+
+	/**
+	 * Reads the file by splitting it into chunks that are parsed in parallel.
+	 * names and cols are filled in as readFile() does, except that a column
+	 * which is text in one chunk but numbers in another is marked as having
+	 * lost its text. Gives up if the file can't be safely split on lines
+	 * @param names List to place the header names in
+	 * @param cols List to place the column buffers in
+	 * @return true if the first row of the file is a header, false if it
+	 *		is not, and null if the file must be read sequentially instead
+	 */
+	private Boolean readFileParallel(List<String> names, List<ColumnBuffer> cols) throws IOException
+	{
+		// Lines can only be found by looking for newline bytes if the
+		// characters we care about are all single bytes
+		final Charset charset = Charset.defaultCharset();
+		if(!Arrays.equals("\n\r,;".getBytes(charset.name()), new byte[] {'\n', '\r', ',', ';'}))
+			return null;
+
+		FileInputStream fis = new FileInputStream(file);
+		final FileChannel channel = fis.getChannel();
+		int threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "CSV Import");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		try
+		{
+			long length = channel.size();
+
+			// Find where the header row ends
+			int prefixSize = (int)Math.min(length, HEADER_SEARCH_SIZE);
+			CharBuffer prefix = decode(charset, channel.map(FileChannel.MapMode.READ_ONLY, 0, prefixSize));
+			CsvImporter headerReader = new CsvImporter(file, new CharArrayReader(prefix.array(),
+					prefix.arrayOffset() + prefix.position(), prefix.remaining()));
+			if(!headerReader.readRow() || headerReader.spansLines)
+				return null;
+
+			int headerChars = (int)(headerReader.charsRead - (headerReader.limit - headerReader.pos));
+			if(headerChars == prefix.remaining() && prefixSize < length)
+				return null;
+
+			// Same rules as readFile() for what the first row means
+			int colCount = headerReader.cells.size();
+			while(colCount > 1 && headerReader.cells.get(colCount - 1).isEmpty() && !headerReader.quoted.get(colCount - 1))
+				colCount--;
+
+			boolean hasHeader = headerReader.quoted.get(0) || !isNumber(headerReader.cells.get(0));
+			if(hasHeader)
+			{
+				for(int i = 0; i < colCount; i++)
+					names.add(headerReader.cells.get(i));
+			}
+
+			long dataStart = 0;
+			if(hasHeader)
+				dataStart = charset.encode(CharBuffer.wrap(prefix.array(), prefix.arrayOffset() + prefix.position(), headerChars)).remaining();
+
+			// Split the rest on line boundaries and parse each chunk
+			long chunkSize = Math.max(1, Math.min(MAX_CHUNK_SIZE, (length - dataStart) / (threads * 4)));
+			final int chunkCols = colCount;
+			List<Future<ChunkResult>> chunks = new ArrayList<Future<ChunkResult>>();
+			long start = dataStart;
+			while(start < length)
+			{
+				final long chunkStart = start;
+				final long chunkEnd = findRowStart(channel, Math.min(length, start + chunkSize));
+				chunks.add(pool.submit(new Callable<ChunkResult>()
+				{
+					@Override
+					public ChunkResult call() throws IOException
+					{
+						return parseChunk(charset, channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, chunkEnd - chunkStart), chunkCols);
+					}
+				}));
+
+				start = chunkEnd;
+			}
+
+			List<ChunkResult> results = new ArrayList<ChunkResult>(chunks.size());
+			for(int i = 0; i < chunks.size(); i++)
+			{
+				ChunkResult result = chunks.get(i).get();
+				if(result.spansLines)
+					return null;
+
+				results.add(result);
+				reportProgress((int)((i + 1) * 100L / chunks.size()));
+			}
+
+			for(int i = 0; i < colCount; i++)
+				cols.add(joinChunks(results, i));
+
+			return hasHeader;
+		}
+		catch(ExecutionException ex)
+		{
+			// Rows that don't fit are reported properly by the sequential read
+			if(ex.getCause() instanceof MarlaException)
+				return null;
+			else if(ex.getCause() instanceof IOException)
+				throw (IOException)ex.getCause();
+			else if(ex.getCause() instanceof RuntimeException)
+				throw (RuntimeException)ex.getCause();
+			else
+				throw new MarlaException("Unable to import file '" + file.getName() + "'", ex.getCause());
+		}
+		catch(InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new MarlaException("Interrupted while importing file '" + file.getName() + "'", ex);
+		}
+		finally
+		{
+			pool.shutdownNow();
+			channel.close();
+			fis.close();
+		}
+	}
+
+	/**
+	 * Parses one chunk of the file into its own column buffers
+	 * @param charset Character set of the file
+	 * @param bytes Bytes of the chunk, which must begin and end on row boundaries
+	 * @param colCount Number of columns in the file
+	 * @return Values and state of the chunk
+	 */
+	private ChunkResult parseChunk(Charset charset, ByteBuffer bytes, int colCount) throws IOException
+	{
+		CharBuffer chars = decode(charset, bytes);
+		CsvImporter chunkReader = new CsvImporter(file, new CharArrayReader(chars.array(),
+				chars.arrayOffset() + chars.position(), chars.remaining()));
+
+		List<ColumnBuffer> chunkCols = new ArrayList<ColumnBuffer>(colCount);
+		for(int i = 0; i < colCount; i++)
+			chunkCols.add(new ColumnBuffer(true));
+
+		while(chunkReader.readRow())
+		{
+			if(chunkReader.spansLines)
+				break;
+
+			chunkReader.addRow(chunkCols, null, -1);
+		}
+
+		return new ChunkResult(chunkCols, chunkReader.spansLines);
+	}
+
+	/**
+	 * Concatenates the values of a single column from every chunk
+	 * @param results Parsed chunks, in file order
+	 * @param col Index of the column to join
+	 * @return Buffer holding the whole column. If the column held both numbers
+	 *		and text it is marked as having lost its text
+	 */
+	private static ColumnBuffer joinChunks(List<ChunkResult> results, int col)
+	{
+		int numberCount = 0;
+		int stringCount = 0;
+		boolean lostText = false;
+		for(ChunkResult result : results)
+		{
+			ColumnBuffer chunkCol = result.cols.get(col);
+			if(chunkCol.isNumeric)
+				numberCount += chunkCol.numberCount;
+			else
+				stringCount += chunkCol.strings.size();
+			lostText |= chunkCol.lostText;
+		}
+
+		if(stringCount == 0)
+		{
+			ColumnBuffer joined = new ColumnBuffer(true);
+			joined.numbers = new double[numberCount];
+			for(ChunkResult result : results)
+			{
+				ColumnBuffer chunkCol = result.cols.get(col);
+				if(!chunkCol.isNumeric)
+					continue;
+
+				System.arraycopy(chunkCol.numbers, 0, joined.numbers, joined.numberCount, chunkCol.numberCount);
+				joined.numberCount += chunkCol.numberCount;
+			}
+
+			return joined;
+		}
+
+		ColumnBuffer joined = new ColumnBuffer(false);
+		if(lostText || numberCount > 0)
+		{
+			// Some of the values were only kept as numbers
+			joined.lostText = true;
+			return joined;
+		}
+
+		for(ChunkResult result : results)
+		{
+			ColumnBuffer chunkCol = result.cols.get(col);
+			if(!chunkCol.isNumeric)
+				joined.strings.addAll(chunkCol.strings);
+		}
+
+		return joined;
+	}
+
+	/**
+	 * Finds the first row that begins at or after the given position
+	 * @param channel Channel for the file
+	 * @param pos Byte position to start looking from
+	 * @return Position just after the next newline, or the end of the file
+	 */
+	private static long findRowStart(FileChannel channel, long pos) throws IOException
+	{
+		long length = channel.size();
+		if(pos <= 0 || pos >= length)
+			return Math.min(Math.max(pos, 0), length);
+
+		// The row starts right here if the previous byte ended a line
+		ByteBuffer buf = ByteBuffer.allocate(4096);
+		long at = pos - 1;
+		while(at < length)
+		{
+			buf.clear();
+			int read = channel.read(buf, at);
+			if(read <= 0)
+				break;
+
+			for(int i = 0; i < read; i++)
+			{
+				if(buf.get(i) == '\n')
+					return at + i + 1;
+			}
+
+			at += read;
+		}
+
+		return length;
+	}
+
+	/**
+	 * Decodes bytes from the file, replacing anything invalid as FileReader would
+	 * @param charset Character set of the file
+	 * @param bytes Bytes to decode
+	 * @return Decoded characters, backed by an array
+	 */
+	private static CharBuffer decode(Charset charset, ByteBuffer bytes) throws IOException
+	{
+		CharsetDecoder decoder = charset.newDecoder();
+		decoder.onMalformedInput(CodingErrorAction.REPLACE);
+		decoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		return decoder.decode(bytes);
+	}
+
+	/**
+	 * Adds the non-empty cells of the row most recently read to their columns
+	 * @param cols Buffers to add values to, one per column
+	 * @param only Columns to fill, null to fill all of them
+	 * @param row Row number in the file for error messages, -1 if unknown
+	 */
+	private void addRow(List<ColumnBuffer> cols, boolean[] only, int row)
+	{
+		for(int i = 0; i < cells.size(); i++)
+		{
+			String val = cells.get(i);
+			if(val.isEmpty())
+				continue;
+
+			if(i >= cols.size())
+			{
+				String rowDesc = (row == -1) ? "A row" : "Row " + row;
+				throw new MarlaException(rowDesc + " of import file '" + file.getName()
+						+ "' has more values than there are columns");
+			}
+
+			if(only == null || only[i])
+				cols.get(i).add(val);
+		}
+	}
+
+	/**
+	 * Reads the next row of the file into cells and quoted. Unquoted cells
+	 * have surrounding whitespace removed, quoted cells are kept exactly as
+	 * they appear between the quotes
+	 * @return false if the end of the file was reached before any row
+	 */
+	private boolean readRow() throws IOException
+	{
+		cells.clear();
+		quoted.clear();
+
+		if(!fill())
+			return false;
+
+		while(true)
+		{
+			// Skip leading whitespace
+			int c = peek();
+			while(c == ' ' || c == '\t')
+			{
+				pos++;
+				c = peek();
+			}
+
+			cell.setLength(0);
+			boolean isQuoted = (c == '"' || c == '\'');
+			if(isQuoted)
+			{
+				pos++;
+				readQuoted((char)c);
+			}
+
+			// Everything up to the separator or end of line, which for a quoted
+			// cell should be nothing other than whitespace
+			int end = -1;
+			while(true)
+			{
+				c = peek();
+				if(c == -1 || c == ',' || c == ';' || c == '\n' || c == '\r')
+				{
+					end = c;
+					break;
+				}
+
+				cell.append((char)c);
+				pos++;
+			}
+
+			if(isQuoted)
+			{
+				// Drop whitespace after the closing quote, keep anything else
+				String val = cell.toString();
+				int trimmed = val.length();
+				while(trimmed > 0 && Character.isWhitespace(val.charAt(trimmed - 1)))
+					trimmed--;
+				cells.add(val.substring(0, trimmed));
+			}
+			else
+			{
+				cells.add(cell.toString().trim());
+			}
+			quoted.add(isQuoted);
+
+			// Move past the separator or line end
+			if(end == ',' || end == ';')
+			{
+				pos++;
+			}
+			else
+			{
+				if(end == '\r')
+				{
+					pos++;
+					if(peek() == '\n')
+						pos++;
+				}
+				else if(end == '\n')
+				{
+					pos++;
+				}
+
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Reads a quoted cell up to its closing quote, which is not included. A
+	 * doubled quote within the cell is a single literal quote. Separators and
+	 * line breaks are part of the cell
+	 * @param quote Quote character that opened the cell
+	 */
+	private void readQuoted(char quote) throws IOException
+	{
+		while(true)
+		{
+			int c = peek();
+			if(c == -1)
+			{
+				spansLines = true;
+				return;
+			}
+
+			pos++;
+			if(c == '\n' || c == '\r')
+				spansLines = true;
+			else if(c == quote)
+			{
+				if(peek() != quote)
+					return;
+
+				pos++;
+			}
+
+			cell.append((char)c);
+		}
+	}
+
+	/**
+	 * Returns the next character without consuming it
+	 * @return Next character, -1 at the end of the file
+	 */
+	private int peek() throws IOException
+	{
+		if(pos == limit && !fill())
+			return -1;
+
+		return buffer[pos];
+	}
+
+	/**
+	 * Ensures there are unparsed characters in the buffer, reading more if needed
+	 * @return false if the end of the file has been reached
+	 */
+	private boolean fill() throws IOException
+	{
+		if(pos < limit)
+			return true;
+
+		int read = in.read(buffer, 0, buffer.length);
+		while(read == 0)
+			read = in.read(buffer, 0, buffer.length);
+
+		if(read == -1)
+		{
+			pos = 0;
+			limit = 0;
+			return false;
+		}
+
+		pos = 0;
+		limit = read;
+		charsRead += read;
+		return true;
+	}
+
+	/**
+	 * Updates the progress bar if the portion of the file read has changed by
+	 * at least a percent since the last update
+	 */
+	private void updateProgress()
+	{
+		long length = file.length();
+		if(length <= 0)
+			return;
+
+		reportProgress((int)Math.min(100, charsRead * 100 / length));
+	}
+
+	/**
+	 * Sets the progress bar to the given percentage, if it has changed
+	 * @param progress Percent of the import completed
+	 */
+	private void reportProgress(int progress)
+	{
+		if(progress == lastProgress)
+			return;
+
+		if(lastProgress == -1)
+		{
+			Domain.setProgressIndeterminate(false);
+			Domain.setProgressMinValue(0);
+			Domain.setProgressMaxValue(100);
+		}
+
+		lastProgress = progress;
+		Domain.setProgressValue(progress);
+	}
+
+	/**
+	 * Checks if the given text is a number, using the same rules as DataColumn
+	 * does when interpreting values as numbers
+	 * @param val Text to check
+	 * @return true if the text is a number
+	 */
+	private static boolean isNumber(String val)
+	{
+		try
+		{
+			Double.parseDouble(val);
+			return true;
+		}
+		catch(NumberFormatException ex)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Columns parsed from one chunk of the file during a parallel import
+	 */
+	private static class ChunkResult
+	{
+		/**
+		 * Values of each column found in the chunk
+		 */
+		final List<ColumnBuffer> cols;
+		/**
+		 * True if a quoted cell in the chunk spanned lines or was never closed
+		 */
+		final boolean spansLines;
+
+		/**
+		 * Creates a new chunk result
+		 * @param cols Values of each column found in the chunk
+		 * @param spansLines True if the chunk could not be trusted to hold whole rows
+		 */
+		ChunkResult(List<ColumnBuffer> cols, boolean spansLines)
+		{
+			this.cols = cols;
+			this.spansLines = spansLines;
+		}
+	}
+
+	/**
+	 * Values of a single column as they are read. Values are held as numbers
+	 * until one is found that isn't, at which point the column switches to text
+	 */
+	private static class ColumnBuffer
+	{
+		/**
+		 * True while every value in the column has been a number
+		 */
+		boolean isNumeric;
+		/**
+		 * Numbers read so far, only the first numberCount are valid
+		 */
+		double[] numbers;
+		/**
+		 * Number of values in numbers
+		 */
+		int numberCount = 0;
+		/**
+		 * Text of each value, once the column is known to not be numeric
+		 */
+		List<String> strings = null;
+		/**
+		 * True if the column became text after already holding numbers, meaning
+		 * the original text of those numbers is lost
+		 */
+		boolean lostText = false;
+
+		/**
+		 * Creates a new, empty column buffer
+		 * @param numeric true to begin by holding values as numbers
+		 */
+		ColumnBuffer(boolean numeric)
+		{
+			isNumeric = numeric;
+			if(numeric)
+				numbers = new double[1024];
+			else
+				strings = new ArrayList<String>();
+		}
+
+		/**
+		 * Adds a value to the end of the column
+		 * @param val Text of the value, as it appeared in the file
+		 */
+		void add(String val)
+		{
+			if(isNumeric)
+			{
+				try
+				{
+					double d = Double.parseDouble(val);
+					if(numberCount == numbers.length)
+						numbers = Arrays.copyOf(numbers, numbers.length * 2);
+					numbers[numberCount++] = d;
+					return;
+				}
+				catch(NumberFormatException ex)
+				{
+					// Text from here on. Keep counting what's been seen so the
+					// values stay in place, but their text has to be read again
+					isNumeric = false;
+					lostText = (numberCount > 0);
+					strings = new ArrayList<String>(Math.max(numberCount * 2, 10));
+					for(int i = 0; i < numberCount; i++)
+						strings.add(Double.toString(numbers[i]));
+					numbers = null;
+					numberCount = 0;
+				}
+			}
+
+			strings.add(val);
+		}
+	}
+}
@@ -19,11 +19,17 @@
 
 package marla.ide.problem;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 
 /**
  * Simple named list of data that belongs to a DataSource. List
@@ -42,18 +48,58 @@ public class DataColumn implements List<Object>
 	 */
 	private String name = new String();
 	/**
-	 * Data in column. Could be strings or doubles
+	 * Data in column when it can't be held as plain doubles or encoded strings.
+	 * Could be strings or doubles. null while numbers or codes holds the data instead
 	 */
-	private ArrayList<Object> values = new ArrayList<Object>();
+	private ArrayList<Object> values = null;
+	/**
+	 * Data in column when every value is a Double, saving the cost of boxing
+	 * each one. Only the first numberCount entries are used
+	 */
+	private double[] numbers = new double[10];
+	/**
+	 * Number of values held in numbers
+	 */
+	private int numberCount = 0;
+	/**
+	 * Data in column when every value is a String, as indexes into dictionary.
+	 * Only the first codeCount entries are used. null unless the column is
+	 * dictionary encoded
+	 */
+	private int[] codes = null;
+	/**
+	 * Number of values held in codes
+	 */
+	private int codeCount = 0;
+	/**
+	 * Distinct strings in the column, indexed by code
+	 */
+	private List<String> dictionary = null;
+	/**
+	 * Reverse of dictionary, giving the code for each string
+	 */
+	private Map<String, Integer> dictionaryLookup = null;
 	/**
 	 * Mode this column is in
 	 */
 	private DataMode mode = DataMode.NUMERIC;
+	/**
+	 * True if the storage above may also be used by a copy of this column, in
+	 * which case it must be copied before this column changes it
+	 */
+	private boolean shared = false;
 	/**
 	 * Valid storage modes for a column to be in. Every value in it will
 	 * be interpreted this way.
 	 */
 	public enum DataMode {NUMERIC, STRING};
+	/**
+	 * Markers for how writeValues() stored the column: as plain doubles,
+	 * dictionary encoded strings, or a mix of both
+	 */
+	private static final byte STORED_NUMBERS = 0;
+	private static final byte STORED_CODES = 1;
+	private static final byte STORED_VALUES = 2;
 
 	/**
 	 * Creates a new DataColumn with the given name that does not
@@ -67,7 +113,10 @@ public class DataColumn implements List<Object>
 	}
 
 	/**
-	 * Creates a deep copy of the current data column pointing to the same parent.
+	 * Creates a copy of the current data column pointing to the given parent.
+	 * The values are shared with the original until either column changes
+	 * them, so copying a column (as every undo step does) costs nothing
+	 * until one of them is edited.
 	 * @param parent DataSource the copy should belong to
 	 * @param org Column to copy values from
 	 */
@@ -75,9 +124,18 @@ public class DataColumn implements List<Object>
 	{
 		this.parent = parent;
 		name = org.name;
-		
-		for(Object v : org.values)
-			values.add(v);
+		mode = org.mode;
+
+		values = org.values;
+		numbers = org.numbers;
+		numberCount = org.numberCount;
+		codes = org.codes;
+		codeCount = org.codeCount;
+		dictionary = org.dictionary;
+		dictionaryLookup = org.dictionaryLookup;
+
+		shared = true;
+		org.shared = true;
 	}
 
 	/**
@@ -103,8 +161,13 @@ public class DataColumn implements List<Object>
 
 		changeBeginning("column " + getName() + " name change");
 
+		String oldName = name;
 		name = newName;
 		markChanged();
+
+		// Anything using the old name needs to know it's gone
+		if(parent != null)
+			parent.markDirty(oldName);
 	}
 
 	/**
@@ -182,11 +245,24 @@ public class DataColumn implements List<Object>
 
 		mode = DataMode.NUMERIC;
 
-		// Try to cast everything as a number
+		// Try to cast everything as a number. Plain doubles obviously are,
+		// and encoded strings only need each distinct value checked
 		try
 		{
-			for(Object o : values)
-				castToMode(o);
+			if(values != null)
+			{
+				for(Object o : values)
+					castToMode(o);
+			}
+			else if(codes != null)
+			{
+				boolean[] used = getUsedCodes();
+				for(int i = 0; i < used.length; i++)
+				{
+					if(used[i])
+						castToMode(dictionary.get(i));
+				}
+			}
 		}
 		catch(NumberFormatException ex)
 		{
@@ -209,9 +285,144 @@ public class DataColumn implements List<Object>
 	public boolean add(Object val)
 	{
 		markChanged();
+		unshare();
+
+		if(isPacked() && val instanceof Double)
+		{
+			ensureNumberCapacity(numberCount + 1);
+			numbers[numberCount++] = (Double)val;
+			return true;
+		}
+		else if(val instanceof String && mayEncode())
+		{
+			startEncoding();
+			ensureCodeCapacity(codeCount + 1);
+			codes[codeCount++] = encode((String)val);
+			return true;
+		}
+
+		unpack();
 		return values.add(val);
 	}
 
+	/**
+	 * Adds all of the given values to the end of the column
+	 * @param vals New values to be added
+	 * @return True if the column was changed
+	 */
+	public boolean addAll(double[] vals)
+	{
+		if(vals.length == 0)
+			return false;
+
+		unshare();
+		if(isPacked())
+		{
+			ensureNumberCapacity(numberCount + vals.length);
+			System.arraycopy(vals, 0, numbers, numberCount, vals.length);
+			numberCount += vals.length;
+		}
+		else
+		{
+			unpack();
+			values.ensureCapacity(values.size() + vals.length);
+			for(double d : vals)
+				values.add(d);
+		}
+
+		markChanged();
+		return true;
+	}
+
+	/**
+	 * Returns the value at the given index as a double, without creating
+	 * a Double for it when the column holds plain numbers
+	 * @param index Location in column
+	 * @return Current value at requested location
+	 */
+	public double getDouble(int index)
+	{
+		if(isPacked())
+		{
+			checkIndex(index, numberCount);
+			return numbers[index];
+		}
+		else if(codes != null)
+		{
+			checkIndex(index, codeCount);
+			return Double.parseDouble(dictionary.get(codes[index]));
+		}
+
+		Object val = values.get(index);
+		if(val instanceof Double)
+			return (Double)val;
+		else
+			return Double.parseDouble(val.toString());
+	}
+
+	/**
+	 * Returns every value in the column as doubles. An exception is thrown
+	 * if any value is not a number
+	 * @return New array holding the column values
+	 */
+	public double[] toDoubleArray()
+	{
+		if(isPacked())
+			return Arrays.copyOf(numbers, numberCount);
+
+		if(codes != null)
+		{
+			// Parse each distinct string only once
+			double[] parsed = new double[dictionary.size()];
+			boolean[] isParsed = new boolean[dictionary.size()];
+
+			double[] vals = new double[codeCount];
+			for(int i = 0; i < codeCount; i++)
+			{
+				int code = codes[i];
+				if(!isParsed[code])
+				{
+					parsed[code] = Double.parseDouble(dictionary.get(code));
+					isParsed[code] = true;
+				}
+				vals[i] = parsed[code];
+			}
+			return vals;
+		}
+
+		double[] vals = new double[values.size()];
+		for(int i = 0; i < vals.length; i++)
+			vals[i] = getDouble(i);
+		return vals;
+	}
+
+	/**
+	 * Returns the distinct strings held by a dictionary-encoded column, indexed
+	 * by the codes returned from getCodes(). Columns are encoded when every value
+	 * in them has been added as a String. Not every string in the dictionary is
+	 * necessarily still in use
+	 * @return Copy of the dictionary, null if the column is not dictionary encoded
+	 */
+	public String[] getDictionary()
+	{
+		if(codes == null)
+			return null;
+
+		return dictionary.toArray(new String[dictionary.size()]);
+	}
+
+	/**
+	 * Returns the dictionary code of each value in a dictionary-encoded column
+	 * @return Copy of the codes, null if the column is not dictionary encoded
+	 */
+	public int[] getCodes()
+	{
+		if(codes == null)
+			return null;
+
+		return Arrays.copyOf(codes, codeCount);
+	}
+
 	/**
 	 * Returns the number of elements in the data column
 	 * @return Count of number of elements in column.
@@ -219,7 +430,12 @@ public class DataColumn implements List<Object>
 	@Override
 	public int size()
 	{
-		return values.size();
+		if(values != null)
+			return values.size();
+		else if(codes != null)
+			return codeCount;
+		else
+			return numberCount;
 	}
 
 	/**
@@ -229,13 +445,13 @@ public class DataColumn implements List<Object>
 	@Override
 	public boolean isEmpty()
 	{
-		return values.isEmpty();
+		return size() == 0;
 	}
 
 	@Override
 	public boolean contains(Object o)
 	{
-		return values.contains(o);
+		return indexOf(o) != -1;
 	}
 
 	@Override
@@ -247,23 +463,23 @@ public class DataColumn implements List<Object>
 	@Override
 	public Object[] toArray()
 	{
-		castAllToMode();
-		return values.toArray();
+		// Never repack here, other threads may be reading the column too
+		return castValues().toArray();
 	}
 
 	@Override
 	public <T> T[] toArray(T[] a)
 	{
-		castAllToMode();
-		return values.toArray(a);
+		return castValues().toArray(a);
 	}
 
 	@Override
 	public boolean remove(Object o)
 	{
-		if(values.remove(o))
+		int index = indexOf(o);
+		if(index != -1)
 		{
-			markChanged();
+			remove(index);
 			return true;
 		}
 		else
@@ -275,24 +491,81 @@ public class DataColumn implements List<Object>
 	@Override
 	public boolean containsAll(Collection<?> c)
 	{
-		return values.containsAll(c);
+		for(Object o : c)
+		{
+			if(!contains(o))
+				return false;
+		}
+
+		return true;
 	}
 
 	@Override
 	public boolean addAll(Collection<? extends Object> c)
 	{
-		if(values.addAll(c))
+		if(c.isEmpty())
+			return false;
+
+		unshare();
+		if(isPacked() && isAll(c, Double.class))
 		{
-			markChanged();
-			return true;
+			ensureNumberCapacity(numberCount + c.size());
+			for(Object o : c)
+				numbers[numberCount++] = (Double)o;
+		}
+		else if(mayEncode() && isAll(c, String.class))
+		{
+			startEncoding();
+			ensureCodeCapacity(codeCount + c.size());
+			for(Object o : c)
+				codes[codeCount++] = encode((String)o);
 		}
 		else
-			return false;
+		{
+			unpack();
+			values.addAll(c);
+		}
+
+		markChanged();
+		return true;
 	}
 
 	@Override
 	public boolean addAll(int index, Collection<? extends Object> c)
 	{
+		unshare();
+		if(isPacked() && isAll(c, Double.class))
+		{
+			checkInsertIndex(index, numberCount);
+			if(c.isEmpty())
+				return false;
+
+			ensureNumberCapacity(numberCount + c.size());
+			System.arraycopy(numbers, index, numbers, index + c.size(), numberCount - index);
+			for(Object o : c)
+				numbers[index++] = (Double)o;
+			numberCount += c.size();
+
+			markChanged();
+			return true;
+		}
+		else if(codes != null && isAll(c, String.class))
+		{
+			checkInsertIndex(index, codeCount);
+			if(c.isEmpty())
+				return false;
+
+			ensureCodeCapacity(codeCount + c.size());
+			System.arraycopy(codes, index, codes, index + c.size(), codeCount - index);
+			for(Object o : c)
+				codes[index++] = encode((String)o);
+			codeCount += c.size();
+
+			markChanged();
+			return true;
+		}
+
+		unpack();
 		if(values.addAll(index, c))
 		{
 			markChanged();
@@ -306,6 +579,10 @@ public class DataColumn implements List<Object>
 	@Override
 	public boolean removeAll(Collection<?> c)
 	{
+		unshare();
+		if(values == null)
+			return filter(c, false);
+
 		if(values.removeAll(c))
 		{
 			markChanged();
@@ -323,6 +600,10 @@ public class DataColumn implements List<Object>
 	@Override
 	public boolean retainAll(Collection<?> c)
 	{
+		unshare();
+		if(values == null)
+			return filter(c, true);
+
 		if(values.retainAll(c))
 		{
 			markChanged();
@@ -332,6 +613,52 @@ public class DataColumn implements List<Object>
 			return false;
 	}
 
+	/**
+	 * Removes plain numbers or encoded strings from the column based on whether
+	 * they are in the given collection
+	 * @param c Elements to check against
+	 * @param keep true to keep only elements in c, false to remove them instead
+	 * @return true if the column has been changed
+	 */
+	private boolean filter(Collection<?> c, boolean keep)
+	{
+		int kept = 0;
+		if(codes != null)
+		{
+			// Only need to check each distinct string once
+			boolean[] keepCode = new boolean[dictionary.size()];
+			for(int i = 0; i < keepCode.length; i++)
+				keepCode[i] = (c.contains(dictionary.get(i)) == keep);
+
+			for(int i = 0; i < codeCount; i++)
+			{
+				if(keepCode[codes[i]])
+					codes[kept++] = codes[i];
+			}
+
+			if(kept == codeCount)
+				return false;
+
+			codeCount = kept;
+		}
+		else
+		{
+			for(int i = 0; i < numberCount; i++)
+			{
+				if(c.contains(numbers[i]) == keep)
+					numbers[kept++] = numbers[i];
+			}
+
+			if(kept == numberCount)
+				return false;
+
+			numberCount = kept;
+		}
+
+		markChanged();
+		return true;
+	}
+
 	/**
 	 * Empties column of all data values. Only marks DataSource as changed if
 	 * it wasn't already empty.
@@ -339,10 +666,17 @@ public class DataColumn implements List<Object>
 	@Override
 	public void clear()
 	{
-		if(!values.isEmpty())
+		if(!isEmpty())
 		{
 			changeBeginning("clearing values from column " + getName());
-			values.clear();
+			values = null;
+			codes = null;
+			codeCount = 0;
+			dictionary = null;
+			dictionaryLookup = null;
+			numbers = new double[10];
+			numberCount = 0;
+			shared = false;
 			markChanged();
 		}
 	}
@@ -355,7 +689,18 @@ public class DataColumn implements List<Object>
 	@Override
 	public Object get(int index)
 	{
-		return castToMode(values.get(index));
+		if(values != null)
+			return castToMode(values.get(index));
+		else if(codes != null)
+		{
+			checkIndex(index, codeCount);
+			return castToMode(dictionary.get(codes[index]));
+		}
+		else
+		{
+			checkIndex(index, numberCount);
+			return castToMode(numbers[index]);
+		}
 	}
 
 	/**
@@ -379,15 +724,229 @@ public class DataColumn implements List<Object>
 	}
 
 	/**
-	 * Forces all objects to be cast to the correct mode now,
-	 * rather than lazily when the values are retrieved
+	 * Returns every value in the column cast to the current mode
+	 * @return New list of the column's values
+	 */
+	private List<Object> castValues()
+	{
+		List<Object> cast = new ArrayList<Object>(size());
+		for(int i = 0; i < size(); i++)
+			cast.add(get(i));
+		return cast;
+	}
+
+	/**
+	 * Checks if the column's values are held as plain numbers
+	 * @return true if numbers holds the data
+	 */
+	private boolean isPacked()
+	{
+		return values == null && codes == null;
+	}
+
+	/**
+	 * Gives the column its own copy of its values if they are shared with
+	 * another column. Must be called before the values are changed in place
+	 */
+	private void unshare()
+	{
+		if(!shared)
+			return;
+
+		if(values != null)
+			values = new ArrayList<Object>(values);
+		else if(codes != null)
+		{
+			codes = Arrays.copyOf(codes, Math.max(codeCount, 10));
+			dictionary = new ArrayList<String>(dictionary);
+			dictionaryLookup = new HashMap<String, Integer>(dictionaryLookup);
+		}
+		else
+			numbers = Arrays.copyOf(numbers, Math.max(numberCount, 10));
+
+		shared = false;
+	}
+
+	/**
+	 * Checks if strings added to the column may be dictionary encoded, which
+	 * is only true if it already is or has nothing in it
+	 * @return true if the column is or may become dictionary encoded
+	 */
+	private boolean mayEncode()
+	{
+		return codes != null || (isPacked() && numberCount == 0);
+	}
+
+	/**
+	 * Switches an empty column to holding encoded strings. Does nothing if
+	 * already done
+	 */
+	private void startEncoding()
+	{
+		if(codes != null)
+			return;
+
+		codes = new int[10];
+		codeCount = 0;
+		dictionary = new ArrayList<String>();
+		dictionaryLookup = new HashMap<String, Integer>();
+		numbers = null;
+	}
+
+	/**
+	 * Returns the dictionary code for the given string, adding it to the
+	 * dictionary if needed
+	 * @param val String to encode
+	 * @return Code for the string
+	 */
+	private int encode(String val)
+	{
+		Integer code = dictionaryLookup.get(val);
+		if(code == null)
+		{
+			code = dictionary.size();
+			dictionary.add(val);
+			dictionaryLookup.put(val, code);
+		}
+
+		return code;
+	}
+
+	/**
+	 * Determines which dictionary entries are actually used by the column
+	 * @return Flag for each dictionary code, true if it appears in the column
+	 */
+	private boolean[] getUsedCodes()
+	{
+		boolean[] used = new boolean[dictionary.size()];
+		for(int i = 0; i < codeCount; i++)
+			used[codes[i]] = true;
+		return used;
+	}
+
+	/**
+	 * Moves the column's values out of numbers or codes and into values, so
+	 * that any type of value may be stored. Does nothing if already done
+	 */
+	private void unpack()
+	{
+		if(values != null)
+			return;
+
+		if(codes != null)
+		{
+			values = new ArrayList<Object>(Math.max(codeCount, 10));
+			for(int i = 0; i < codeCount; i++)
+				values.add(dictionary.get(codes[i]));
+
+			codes = null;
+			codeCount = 0;
+			dictionary = null;
+			dictionaryLookup = null;
+		}
+		else
+		{
+			values = new ArrayList<Object>(Math.max(numberCount, 10));
+			for(int i = 0; i < numberCount; i++)
+				values.add(numbers[i]);
+		}
+
+		numbers = null;
+		numberCount = 0;
+
+		// Everything is newly built, so nothing is shared any more
+		shared = false;
+	}
+
+	/**
+	 * Moves the column's values into numbers, which must only be done if
+	 * every value is a Double
+	 */
+	private void packNumbers()
+	{
+		numbers = new double[Math.max(values.size(), 10)];
+		numberCount = values.size();
+		for(int i = 0; i < numberCount; i++)
+			numbers[i] = (Double)values.get(i);
+
+		values = null;
+		shared = false;
+	}
+
+	/**
+	 * Moves the column's values into codes, which must only be done if
+	 * every value is a String
+	 */
+	private void packStrings()
+	{
+		List<Object> strings = values;
+		values = null;
+
+		startEncoding();
+		ensureCodeCapacity(strings.size());
+		for(Object o : strings)
+			codes[codeCount++] = encode((String)o);
+
+		shared = false;
+	}
+
+	/**
+	 * Ensures numbers can hold at least the given number of values
+	 * @param capacity Number of values needed
+	 */
+	private void ensureNumberCapacity(int capacity)
+	{
+		if(capacity > numbers.length)
+			numbers = Arrays.copyOf(numbers, Math.max(capacity, numbers.length * 3 / 2 + 1));
+	}
+
+	/**
+	 * Ensures codes can hold at least the given number of values
+	 * @param capacity Number of values needed
+	 */
+	private void ensureCodeCapacity(int capacity)
+	{
+		if(capacity > codes.length)
+			codes = Arrays.copyOf(codes, Math.max(capacity, codes.length * 3 / 2 + 1));
+	}
+
+	/**
+	 * Ensures the given index refers to an existing value
+	 * @param index Index to check
+	 * @param count Number of values held
 	 */
-	private void castAllToMode()
+	private static void checkIndex(int index, int count)
 	{
-		// Convert all values to the correct mode now,
-		// rather than waiting for the lazy cast
-		for(int i = 0; i < values.size(); i++)
-			values.set(i, castToMode(values.get(i)));
+		if(index < 0 || index >= count)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+	}
+
+	/**
+	 * Ensures the given index is a valid place to insert values
+	 * @param index Index to check
+	 * @param count Number of values held
+	 */
+	private static void checkInsertIndex(int index, int count)
+	{
+		if(index < 0 || index > count)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+	}
+
+	/**
+	 * Checks if everything in the given collection is of the given type
+	 * @param c Collection to check
+	 * @param type Class every element must be
+	 * @return true if every element is of the type
+	 */
+	private static boolean isAll(Collection<?> c, Class<?> type)
+	{
+		for(Object o : c)
+		{
+			if(o == null || o.getClass() != type)
+				return false;
+		}
+
+		return true;
 	}
 
 	/**
@@ -400,17 +959,17 @@ public class DataColumn implements List<Object>
 	@Override
 	public Object set(int index, Object element)
 	{
-		Object old = values.get(index);
+		Object old = null;
 
 		try
 		{
-			values.set(index, castToMode(element));
+			old = setCast(index, castToMode(element));
 		}
 		catch(NumberFormatException ex)
 		{
 			// Change modes and try again
 			mode = DataMode.STRING;
-			values.set(index, castToMode(element));
+			old = setCast(index, castToMode(element));
 		}
 
 		// Only mark unsaved if it actually set a new value
@@ -420,6 +979,38 @@ public class DataColumn implements List<Object>
 		return old;
 	}
 
+	/**
+	 * Stores an already cast value at the given index
+	 * @param index Index in the column to change
+	 * @param cast New value for column, as returned by castToMode()
+	 * @return Old value at given location
+	 */
+	private Object setCast(int index, Object cast)
+	{
+		unshare();
+
+		Object old = null;
+		if(isPacked() && cast instanceof Double)
+		{
+			checkIndex(index, numberCount);
+			old = numbers[index];
+			numbers[index] = (Double)cast;
+		}
+		else if(codes != null && cast instanceof String)
+		{
+			checkIndex(index, codeCount);
+			old = dictionary.get(codes[index]);
+			codes[index] = encode((String)cast);
+		}
+		else
+		{
+			unpack();
+			old = values.set(index, cast);
+		}
+
+		return old;
+	}
+
 	/**
 	 * Inserts an element at the given index. Elements are shifted down (higher
 	 * index) to make room.
@@ -429,7 +1020,29 @@ public class DataColumn implements List<Object>
 	@Override
 	public void add(int index, Object element)
 	{
-		values.add(index, element);
+		unshare();
+		if(isPacked() && element instanceof Double)
+		{
+			checkInsertIndex(index, numberCount);
+			ensureNumberCapacity(numberCount + 1);
+			System.arraycopy(numbers, index, numbers, index + 1, numberCount - index);
+			numbers[index] = (Double)element;
+			numberCount++;
+		}
+		else if(codes != null && element instanceof String)
+		{
+			checkInsertIndex(index, codeCount);
+			ensureCodeCapacity(codeCount + 1);
+			System.arraycopy(codes, index, codes, index + 1, codeCount - index);
+			codes[index] = encode((String)element);
+			codeCount++;
+		}
+		else
+		{
+			unpack();
+			values.add(index, element);
+		}
+
 		markChanged();
 	}
 
@@ -442,6 +1055,28 @@ public class DataColumn implements List<Object>
 	@Override
 	public Object remove(int index)
 	{
+		unshare();
+		if(isPacked())
+		{
+			checkIndex(index, numberCount);
+			markChanged();
+
+			double old = numbers[index];
+			System.arraycopy(numbers, index + 1, numbers, index, numberCount - index - 1);
+			numberCount--;
+			return old;
+		}
+		else if(codes != null)
+		{
+			checkIndex(index, codeCount);
+			markChanged();
+
+			String old = dictionary.get(codes[index]);
+			System.arraycopy(codes, index + 1, codes, index, codeCount - index - 1);
+			codeCount--;
+			return old;
+		}
+
 		markChanged();
 		return values.remove(index);
 	}
@@ -454,7 +1089,34 @@ public class DataColumn implements List<Object>
 	@Override
 	public int indexOf(Object o)
 	{
-		return values.indexOf(o);
+		if(values != null)
+			return values.indexOf(o);
+
+		if(codes != null)
+		{
+			// Encoded strings only ever equal Strings in the dictionary
+			int code = findCode(o);
+			for(int i = 0; i < codeCount && code != -1; i++)
+			{
+				if(codes[i] == code)
+					return i;
+			}
+
+			return -1;
+		}
+
+		// Plain numbers only ever equal Doubles
+		if(!(o instanceof Double))
+			return -1;
+
+		long bits = Double.doubleToLongBits((Double)o);
+		for(int i = 0; i < numberCount; i++)
+		{
+			if(Double.doubleToLongBits(numbers[i]) == bits)
+				return i;
+		}
+
+		return -1;
 	}
 
 	/**
@@ -465,7 +1127,51 @@ public class DataColumn implements List<Object>
 	@Override
 	public int lastIndexOf(Object o)
 	{
-		return values.lastIndexOf(o);
+		if(values != null)
+			return values.lastIndexOf(o);
+
+		if(codes != null)
+		{
+			// Encoded strings only ever equal Strings in the dictionary
+			int code = findCode(o);
+			for(int i = codeCount - 1; i >= 0 && code != -1; i--)
+			{
+				if(codes[i] == code)
+					return i;
+			}
+
+			return -1;
+		}
+
+		// Plain numbers only ever equal Doubles
+		if(!(o instanceof Double))
+			return -1;
+
+		long bits = Double.doubleToLongBits((Double)o);
+		for(int i = numberCount - 1; i >= 0; i--)
+		{
+			if(Double.doubleToLongBits(numbers[i]) == bits)
+				return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Looks up the dictionary code for the given object
+	 * @param o Object to find
+	 * @return Code of the object, -1 if it isn't a String in the dictionary
+	 */
+	private int findCode(Object o)
+	{
+		if(!(o instanceof String))
+			return -1;
+
+		Integer code = dictionaryLookup.get((String)o);
+		if(code == null)
+			return -1;
+		else
+			return code;
 	}
 
 	@Override
@@ -495,17 +1201,18 @@ public class DataColumn implements List<Object>
 	{
 		StringBuilder sb = new StringBuilder();
 
-		for(int i = 0; i < values.size(); i++)
+		int count = size();
+		for(int i = 0; i < count; i++)
 		{
 			if(mode == DataMode.STRING)
 				sb.append('"');
-			sb.append(castToMode(values.get(i)));
+			sb.append(get(i));
 			if(mode == DataMode.STRING)
 				sb.append('"');
 
 			sb.append(", ");
 		}
-		if(values.size() > 0)
+		if(count > 0)
 			sb.replace(sb.length() - 2, sb.length(), "");
 
 		return sb.toString();
@@ -532,28 +1239,225 @@ public class DataColumn implements List<Object>
 			return false;
 		if(!name.equals(otherCol.name))
 			return false;
-
-		// Convert all values to the correct mode, to ensure we compare fairly
-		castAllToMode();
-		otherCol.castAllToMode();
-		if(!values.equals(otherCol.values))
+		if(size() != otherCol.size())
 			return false;
 
+		// Compare values cast to the current mode, to ensure we compare fairly
+		if(mode == DataMode.NUMERIC)
+		{
+			for(int i = 0; i < size(); i++)
+			{
+				if(Double.doubleToLongBits(getDouble(i)) != Double.doubleToLongBits(otherCol.getDouble(i)))
+					return false;
+			}
+		}
+		else
+		{
+			for(int i = 0; i < size(); i++)
+			{
+				if(!get(i).equals(otherCol.get(i)))
+					return false;
+			}
+		}
+
 		return true;
 	}
 
 	@Override
 	public int hashCode()
 	{
-		castAllToMode();
+		// Same as a List of the values cast to the current mode
+		int valuesHash = 1;
+		for(int i = 0; i < size(); i++)
+		{
+			int valHash;
+			if(mode == DataMode.NUMERIC)
+			{
+				long bits = Double.doubleToLongBits(getDouble(i));
+				valHash = (int)(bits ^ (bits >>> 32));
+			}
+			else if(codes != null)
+				valHash = dictionary.get(codes[i]).hashCode();
+			else
+				valHash = get(i).hashCode();
+
+			valuesHash = 31 * valuesHash + valHash;
+		}
 
 		int hash = 5;
 		hash = 11 * hash + (this.name != null ? this.name.hashCode() : 0);
-		hash = 11 * hash + (this.values != null ? this.values.hashCode() : 0);
+		hash = 11 * hash + valuesHash;
 		hash = 11 * hash + (this.mode != null ? this.mode.hashCode() : 0);
 		return hash;
 	}
 
+	/**
+	 * Writes the column's values in a compact binary form, keeping them
+	 * stored however they currently are. Read back with readValues()
+	 * @param out Stream to write values to
+	 * @throws IOException Thrown if the stream can't be written to
+	 */
+	void writeValues(DataOutput out) throws IOException
+	{
+		if(isPacked())
+		{
+			out.writeByte(STORED_NUMBERS);
+			out.writeInt(numberCount);
+			for(int i = 0; i < numberCount; i++)
+				out.writeDouble(numbers[i]);
+		}
+		else if(codes != null)
+		{
+			out.writeByte(STORED_CODES);
+			out.writeInt(dictionary.size());
+			for(String s : dictionary)
+				writeString(out, s);
+
+			out.writeInt(codeCount);
+			for(int i = 0; i < codeCount; i++)
+				out.writeInt(codes[i]);
+		}
+		else
+		{
+			out.writeByte(STORED_VALUES);
+			out.writeInt(values.size());
+			for(Object val : values)
+			{
+				if(val instanceof Double)
+				{
+					out.writeBoolean(true);
+					out.writeDouble((Double)val);
+				}
+				else
+				{
+					out.writeBoolean(false);
+					writeString(out, val.toString());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replaces the column's values with those written by writeValues()
+	 * @param in Stream to read values from
+	 * @throws IOException Thrown if the stream can't be read or is not in
+	 *		the expected format
+	 */
+	void readValues(DataInput in) throws IOException
+	{
+		shared = false;
+		values = null;
+		numbers = null;
+		numberCount = 0;
+		codes = null;
+		codeCount = 0;
+		dictionary = null;
+		dictionaryLookup = null;
+
+		byte storage = in.readByte();
+		if(storage == STORED_NUMBERS)
+		{
+			int count = in.readInt();
+			numbers = new double[Math.max(count, 10)];
+			for(int i = 0; i < count; i++)
+				numbers[i] = in.readDouble();
+			numberCount = count;
+		}
+		else if(storage == STORED_CODES)
+		{
+			int dictSize = in.readInt();
+			dictionary = new ArrayList<String>(dictSize);
+			dictionaryLookup = new HashMap<String, Integer>();
+			for(int i = 0; i < dictSize; i++)
+			{
+				String s = readString(in);
+				dictionary.add(s);
+				dictionaryLookup.put(s, i);
+			}
+
+			int count = in.readInt();
+			codes = new int[Math.max(count, 10)];
+			for(int i = 0; i < count; i++)
+			{
+				codes[i] = in.readInt();
+				if(codes[i] < 0 || codes[i] >= dictSize)
+					throw new IOException("Column '" + name + "' has an invalid string code");
+			}
+			codeCount = count;
+		}
+		else if(storage == STORED_VALUES)
+		{
+			int count = in.readInt();
+			values = new ArrayList<Object>(Math.max(count, 10));
+			for(int i = 0; i < count; i++)
+			{
+				if(in.readBoolean())
+					values.add(in.readDouble());
+				else
+					values.add(readString(in));
+			}
+		}
+		else
+			throw new IOException("Column '" + name + "' is stored in unknown form " + storage);
+
+		markChanged();
+	}
+
+	/**
+	 * Replaces the column's values with those held by the given column, which
+	 * is left empty. The values are moved rather than copied
+	 * @param org Column to take values from
+	 */
+	void takeValues(DataColumn org)
+	{
+		values = org.values;
+		numbers = org.numbers;
+		numberCount = org.numberCount;
+		codes = org.codes;
+		codeCount = org.codeCount;
+		dictionary = org.dictionary;
+		dictionaryLookup = org.dictionaryLookup;
+		shared = org.shared;
+
+		org.values = null;
+		org.numbers = new double[10];
+		org.numberCount = 0;
+		org.codes = null;
+		org.codeCount = 0;
+		org.dictionary = null;
+		org.dictionaryLookup = null;
+		org.shared = false;
+
+		markChanged();
+	}
+
+	/**
+	 * Writes a string of any length as its length in UTF-8 bytes followed by
+	 * the bytes themselves
+	 * @param out Stream to write to
+	 * @param s String to write
+	 * @throws IOException Thrown if the stream can't be written to
+	 */
+	private static void writeString(DataOutput out, String s) throws IOException
+	{
+		byte[] bytes = s.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a string written by writeString()
+	 * @param in Stream to read from
+	 * @return String read
+	 * @throws IOException Thrown if the stream can't be read
+	 */
+	private static String readString(DataInput in) throws IOException
+	{
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
 	/**
 	 * Marks this DataColumn as having changes than haven't been saved
 	 * and tells parent about it, so that they can take appropriate action
@@ -563,7 +1467,7 @@ public class DataColumn implements List<Object>
 		if(parent != null)
 		{
 			parent.markUnsaved();
-			parent.markDirty ();
+			parent.markDirty(name);
 		}
 	}
 
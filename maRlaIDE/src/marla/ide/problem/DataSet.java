@@ -20,22 +20,19 @@
 package marla.ide.problem;
 
 import java.awt.Color;
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import org.jdom.Element;
 import marla.ide.problem.DataColumn.DataMode;
 import marla.ide.r.RProcessor;
 import marla.ide.r.RProcessor.RecordMode;
 import marla.ide.r.RProcessorParseException;
+import marla.ide.r.RProcessorPool;
 
 /**
  * Contains a simple dataset that essentially amounts to a table
@@ -139,9 +136,9 @@ public final class DataSet extends DataSource
 	}
 
 	/**
-	 * Imports the given file in as a dataset. Files may be either in table format or CSV,
-	 * as parsed by R read.table() and read.csv(). Column names may be given at the top
-	 * of each column. The dataset name is set from the file name.
+	 * Imports the given file in as a dataset. Values may be separated by commas or
+	 * semicolons and quoted with double or single quotes. Column names may be given
+	 * at the top of each column. The dataset name is set from the file name.
 	 * @param filePath Absolute or relative path to file to import.
 	 * @return New DataSet containing the imported values
 	 */
@@ -149,74 +146,7 @@ public final class DataSet extends DataSource
 	{
 		try
 		{
-			// Open file ourselves to determine the type and settings we'll be handing R
-			File file = new File(filePath);
-			BufferedReader is = new BufferedReader(new FileReader(file));
-
-			// Read top line of file so we can look for column headers
-			// Basically just see if the top is parsable as numbers, in which case
-			// we assume no header
-			String line = is.readLine();
-			Pattern splitPatt = Pattern.compile(",|;");
-			Pattern trimPatt = Pattern.compile("^\\s*([\"']?)(.*)\\1\\s*$");
-			String[] headers = splitPatt.split(line);
-			boolean hasHeader = false;
-			try
-			{
-				// Do these work as numbers?
-				Double.parseDouble(headers[0]);
-			}
-			catch(NumberFormatException e)
-			{
-				// Well, we certainly can't use the columns as numbers, so they must be headers
-				hasHeader = true;
-			}
-
-			// Create columns and add to our new DataSet
-			DataSet ds = new DataSet(file.getName());
-			Matcher cellMatcher = trimPatt.matcher("");
-			for(int i = 0; i < headers.length; i++)
-			{
-				cellMatcher.reset(headers[i]);
-				cellMatcher.find();
-				String cell = cellMatcher.group(2);
-				if(hasHeader)
-				{
-					ds.addColumn(cell.trim());
-				}
-				else
-				{
-					// Make up a name and add the number we read in accidentally
-					DataColumn dc = ds.addColumn("Column " + (i + 1));
-					dc.add(cell);
-				}
-			}
-
-			// Read through the rest of the numbers
-			line = is.readLine();
-			while(line != null)
-			{
-				String[] row = splitPatt.split(line);
-
-				for(int i = 0; i < row.length; i++)
-				{
-					cellMatcher.reset(row[i]);
-					cellMatcher.find();
-					String cell = cellMatcher.group(2);
-					if(!cell.isEmpty())
-						ds.getColumn(i).add(cell);
-				}
-
-				line = is.readLine();
-			}
-
-			// Set the DataColumn modes as appropriate
-			for(int i = 0; i < ds.getColumnCount(); i++)
-			{
-				ds.getColumn(i).autoDetectMode();
-			}
-
-			return ds;
+			return new CsvImporter(new File(filePath)).importData();
 		}
 		catch(IOException ex)
 		{
@@ -316,17 +246,14 @@ public final class DataSet extends DataSource
 		for(String col : cols)
 		{
 			DataColumn dc = ds.addColumn(col);
-			try
-			{
+			List<Object> vals = proc.executeVector(varName + "$" + col);
+			if(vals.isEmpty())
+				throw new RProcessorParseException("The R result did not contain any values");
+			if(vals.get(0) instanceof Double)
 				dc.setMode(DataMode.NUMERIC);
-				dc.addAll(proc.executeDoubleArray(varName + "$" + col));
-			}
-			catch(RProcessorParseException ex)
-			{
-				// Doubles failed, probably strings
+			else
 				dc.setMode(DataMode.STRING);
-				dc.addAll(proc.executeStringArray(varName + "$" + col));
-			}
+			dc.addAll(vals);
 		}
 
 		return ds;
@@ -627,11 +554,33 @@ public final class DataSet extends DataSource
 	{
 		if(!chain)
 		{
-			RProcessor proc = RProcessor.getInstance();
-			RecordMode oldMode = proc.setRecorderMode(RecordMode.CMDS_ONLY);
-			toRFrame();
-			proc.setRecorderMode(oldMode);
-			return proc.fetchInteraction();
+			// Only the commands are wanted, the frame itself is thrown away.
+			// Done on a leased process so the scope can't remove anyone else's variables
+			RProcessorPool pool = RProcessorPool.getInstance();
+			RProcessor proc = pool.lease();
+			try
+			{
+				String scope = proc.startScope();
+				RecordMode oldMode = proc.setRecorderMode(RecordMode.CMDS_ONLY);
+				String record;
+				try
+				{
+					toRFrame(this, proc);
+				}
+				finally
+				{
+					// Leave nothing behind for whoever leases the process next
+					proc.setRecorderMode(oldMode);
+					record = proc.fetchInteraction();
+					proc.endScope(scope);
+				}
+
+				return record;
+			}
+			finally
+			{
+				pool.release(proc);
+			}
 		}
 		else
 			return "";
@@ -650,8 +599,17 @@ public final class DataSet extends DataSource
 	 */
 	public static String toRFrame(DataSource ds)
 	{
-		RProcessor proc = RProcessor.getInstance();
+		return toRFrame(ds, RProcessor.getInstance());
+	}
 
+	/**
+	 * Takes the given DataSource and exports it to R as a complete data frame
+	 * @param ds DataSource to work over
+	 * @param proc R process to create the frame in
+	 * @return Name of the R variable the frame is saved to
+	 */
+	public static String toRFrame(DataSource ds, RProcessor proc)
+	{
 		// Save all of the columns to variables
 		List<String> colVars = new ArrayList<String>();
 		for(int i = 0; i < ds.getColumnCount(); i++)
@@ -659,7 +617,12 @@ public final class DataSet extends DataSource
 			DataColumn dc = ds.getColumn(i);
 			String colName = proc.executeString("make.names('" + dc.getName() + "')");
 			colVars.add(colName);
-			proc.setVariable(colName, dc);
+			if(dc.isNumeric())
+				proc.setVariable(colName, dc.toDoubleArray());
+			else if(dc.getDictionary() != null)
+				proc.setFactor(colName, dc.getDictionary(), dc.getCodes());
+			else
+				proc.setVariable(colName, dc);
 		}
 
 		// Save to frame
@@ -680,6 +643,18 @@ public final class DataSet extends DataSource
 
 	@Override
 	public Element toXml()
+	{
+		return toXml(true);
+	}
+
+	/**
+	 * Creates a JDOM Element for this DataSet, optionally leaving out the column
+	 * values for them to be saved separately
+	 * @param includeValues true to place each value in the XML, false to only
+	 *		include the names and modes of the columns
+	 * @return JDOM Element of this DataSet
+	 */
+	Element toXml(boolean includeValues)
 	{
 		Element dataEl = new Element("data");
 
@@ -692,8 +667,11 @@ public final class DataSet extends DataSource
 			colEl.setAttribute("mode", col.getMode().toString());
 
 			// Each of the values
-			for(Object d : col)
-				colEl.addContent(new Element("value").addContent(d.toString()));
+			if(includeValues)
+			{
+				for(Object d : col)
+					colEl.addContent(new Element("value").addContent(d.toString()));
+			}
 
 			// And put it with the rest of the data
 			dataEl.addContent(colEl);
@@ -711,6 +689,19 @@ public final class DataSet extends DataSource
 	 * @return Constructed and initialized DataSet
 	 */
 	public static DataSet fromXml(Element dataEl)
+	{
+		return fromXml(dataEl, null);
+	}
+
+	/**
+	 * Creates new DataSet with information in JDOM Element, optionally taking
+	 * the column values from elsewhere
+	 * @param dataEl JDOM Element with the information to construct DataSet
+	 * @param values Supplies each column's values, in order. If null
+	 *		the values are read from the XML
+	 * @return Constructed and initialized DataSet
+	 */
+	static DataSet fromXml(Element dataEl, ColumnValueSource values)
 	{
 		DataSet newData = new DataSet("initializing");
 		newData.isLoading = true;
@@ -728,8 +719,22 @@ public final class DataSet extends DataSource
 			newCol.setMode(DataMode.valueOf(colEl.getAttributeValue("mode")));
 
 			// Stick in values
-			for(Object el : colEl.getChildren("value"))
-				newCol.add(((Element) el).getText());
+			if(values != null)
+			{
+				try
+				{
+					values.readValues(newCol);
+				}
+				catch(IOException ex)
+				{
+					throw new ProblemException("Unable to read values for column '" + newCol.getName() + "'", ex);
+				}
+			}
+			else
+			{
+				for(Object el : colEl.getChildren("value"))
+					newCol.add(((Element) el).getText());
+			}
 		}
 
 		newData.isLoading = false;
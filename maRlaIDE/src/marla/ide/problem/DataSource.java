@@ -515,6 +515,17 @@ public abstract class DataSource extends JLabel implements Loadable, Changeable
 			op.markDirty();
 	}
 
+	/**
+	 * Tells our child operations that the given column has changed. Only
+	 * those which use the column are marked dirty
+	 * @param colName Name of the column that changed
+	 */
+	public void markDirty(String colName)
+	{
+		for(Operation op : solutionOps)
+			op.parentColumnChanged(colName);
+	}
+
 	/**
 	 * Ensures that the displayed name for the DataSource is the
 	 * correct version and rebuilds the tree if needed
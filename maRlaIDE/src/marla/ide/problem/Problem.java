@@ -20,19 +20,14 @@
 package marla.ide.problem;
 
 import marla.ide.gui.Domain;
-import java.io.BufferedWriter;
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.List;
+import javax.xml.stream.XMLStreamException;
 import marla.ide.operation.Operation;
-import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.JDOMException;
-import org.jdom.input.SAXBuilder;
-import org.jdom.output.Format;
-import org.jdom.output.XMLOutputter;
 
 /**
  * Contains an entire stats problem, including the question itself,
@@ -122,6 +117,19 @@ public final class Problem implements ProblemPart, Cloneable
 	 * it was last updated in any way.
 	 */
 	private boolean isSaved = false;
+	/**
+	 * Number of changes made to this problem, used to tell if a copy
+	 * taken for saving is still current
+	 */
+	private long changeCount = 0;
+	/**
+	 * Time (system clock in ms) of the most recent change
+	 */
+	private long lastChangeTime = 0;
+	/**
+	 * Time (system clock in ms) of the first change since the problem was last saved
+	 */
+	private long firstUnsavedTime = 0;
 
 	/**
 	 * Creates a new problem with the problem statement unspecified.
@@ -179,6 +187,9 @@ public final class Problem implements ProblemPart, Cloneable
 		// Restore saved setting now, as adding the stuff above probably marked us
 		// unsaved no matter what
 		isSaved = org.isSaved;
+		changeCount = org.changeCount;
+		lastChangeTime = org.lastChangeTime;
+		firstUnsavedTime = org.firstUnsavedTime;
 		
 		isLoading = false;
 	}
@@ -816,9 +827,43 @@ public final class Problem implements ProblemPart, Cloneable
 		return !isSaved;
 	}
 
+	/**
+	 * Returns the number of changes made to this problem. Copies start
+	 * with the count of the problem they were taken from
+	 * @return Number of times the problem has been marked unsaved
+	 */
+	public long getChangeCount()
+	{
+		return changeCount;
+	}
+
+	/**
+	 * Returns when the problem was last changed
+	 * @return Time (system clock in ms) of the most recent change, 0 if never changed
+	 */
+	public long getLastChangeTime()
+	{
+		return lastChangeTime;
+	}
+
+	/**
+	 * Returns when the problem was first changed after it was last saved
+	 * @return Time (system clock in ms) of the first unsaved change, 0 if never changed
+	 */
+	public long getFirstUnsavedTime()
+	{
+		return firstUnsavedTime;
+	}
+
 	@Override
 	public void markUnsaved()
 	{
+		long now = System.currentTimeMillis();
+		if(isSaved || firstUnsavedTime == 0)
+			firstUnsavedTime = now;
+		lastChangeTime = now;
+		changeCount++;
+
 		isSaved = false;
 
 		// Don't bother if we're loading
@@ -843,7 +888,9 @@ public final class Problem implements ProblemPart, Cloneable
 	}
 
 	/**
-	 * Attempts to save problem to file path given.
+	 * Attempts to save problem to file path given. The problem is written
+	 * under a temporary name in the same directory and then renamed over
+	 * the real file, so an interrupted save never leaves a partial file behind.
 	 * @param fileName Where to attempt to save the problem.
 	 */
 	private void save(String fileName)
@@ -851,23 +898,40 @@ public final class Problem implements ProblemPart, Cloneable
 		if(fileName == null)
 			throw new ProblemException("File name may not be null");
 
-		// Build
-		Document doc = new Document(this.toXml());
-
+		File target = new File(fileName).getAbsoluteFile();
+		File tempFile = null;
 		try
 		{
-			// Output to file
-			OutputStreamWriter os = new OutputStreamWriter(new FileOutputStream(fileName));
-			BufferedWriter outputStream = new BufferedWriter(os);
+			tempFile = File.createTempFile("." + target.getName() + ".", ".tmp", target.getParentFile());
 
-			Format formatter = Format.getPrettyFormat();
-			XMLOutputter xml = new XMLOutputter(formatter);
-			xml.output(doc, outputStream);
+			// Binary snapshots are chosen by their extension
+			if(BinaryProblemFile.isBinaryName(fileName))
+				BinaryProblemFile.write(this, tempFile.getPath());
+			else
+				XmlProblemFile.write(this, tempFile.getPath());
+
+			// Not every platform will rename over an existing file
+			if(!tempFile.renameTo(target))
+			{
+				target.delete();
+				if(!tempFile.renameTo(target))
+					throw new IOException("Unable to replace '" + fileName + "'");
+			}
+			tempFile = null;
+		}
+		catch(XMLStreamException ex)
+		{
+			throw new ProblemException("Problem occured writing to file during save", ex);
 		}
 		catch(IOException ex)
 		{
 			throw new ProblemException("Problem occured writing to file during save", ex);
 		}
+		finally
+		{
+			if(tempFile != null)
+				tempFile.delete();
+		}
 	}
 
 	/**
@@ -883,6 +947,37 @@ public final class Problem implements ProblemPart, Cloneable
 			d.markSaved();
 	}
 
+	/**
+	 * Writes the problem to the file specified by fileName without marking it
+	 * saved or touching the interface. Intended for copies of the problem
+	 * being saved away from the event thread; once written, the original
+	 * is marked saved with markSaved(long)
+	 */
+	public void saveCopy()
+	{
+		save(fileName);
+	}
+
+	/**
+	 * Marks the problem saved, but only if it has not changed since the copy
+	 * that was written was taken
+	 * @param savedChangeCount Change count of the problem when the copy was taken
+	 * @return true if the problem was marked saved, false if it has changed since
+	 */
+	public boolean markSaved(long savedChangeCount)
+	{
+		if(changeCount != savedChangeCount)
+			return false;
+
+		isSaved = true;
+
+		Domain d = getDomain();
+		if(d != null)
+			d.markSaved();
+
+		return true;
+	}
+
 	/**
 	 * Loads a problem from the file path given. Returned Problem object
 	 * should essentially duplicate the state the problem was in when it
@@ -894,12 +989,18 @@ public final class Problem implements ProblemPart, Cloneable
 	{
 		try
 		{
-			// Load file into JDOM
-			SAXBuilder parser = new SAXBuilder();
-			Document doc = parser.build(fileName);
+			Problem newProb = null;
+			if(BinaryProblemFile.isBinaryFile(fileName))
+			{
+				// Structure and column values stored separately
+				newProb = BinaryProblemFile.read(fileName);
+			}
+			else
+			{
+				// Column values are streamed straight into the columns
+				newProb = XmlProblemFile.read(fileName);
+			}
 
-			// Make problem
-			Problem newProb = Problem.fromXml(doc.getRootElement());
 			newProb.setFileName(fileName);
 			newProb.isSaved = true;
 
@@ -909,6 +1010,10 @@ public final class Problem implements ProblemPart, Cloneable
 		{
 			throw new ProblemException("Save file contains unparsable XML errors", ex);
 		}
+		catch(XMLStreamException ex)
+		{
+			throw new ProblemException("Save file contains unparsable XML errors", ex);
+		}
 		catch(NullPointerException ex)
 		{
 			throw new ProblemException("An error occurred loading from the save file. It may be an old version.", ex);
@@ -991,6 +1096,18 @@ public final class Problem implements ProblemPart, Cloneable
 
 	@Override
 	public Element toXml()
+	{
+		return toXml(true);
+	}
+
+	/**
+	 * Creates a JDOM Element for this problem, optionally leaving out the
+	 * column values of each DataSet for them to be saved separately
+	 * @param includeValues true to place each value in the XML, false to only
+	 *		include the names and modes of the columns
+	 * @return JDOM Element of this problem
+	 */
+	Element toXml(boolean includeValues)
 	{
 		Element rootEl = new Element("problem");
 
@@ -1008,7 +1125,7 @@ public final class Problem implements ProblemPart, Cloneable
 		// Add each DataSet
 		for(DataSet data : datasets)
 		{
-			rootEl.addContent(data.toXml());
+			rootEl.addContent(data.toXml(includeValues));
 		}
 
 		// Add the unused operations problems
@@ -1034,6 +1151,19 @@ public final class Problem implements ProblemPart, Cloneable
 	 * @return Newly created problem from the given XML
 	 */
 	public static Problem fromXml(Element rootEl)
+	{
+		return fromXml(rootEl, null);
+	}
+
+	/**
+	 * Creates a new problem based on the data in the given XML tree, optionally
+	 * taking the column values from elsewhere
+	 * @param rootEl JDOM Tree to load problem from
+	 * @param values Supplies each column's values, in order. If null
+	 *		the values are read from the XML
+	 * @return Newly created problem from the given XML
+	 */
+	static Problem fromXml(Element rootEl, ColumnValueSource values)
 	{
 		Problem newProb = new Problem();
 		newProb.isLoading = true;
@@ -1052,7 +1182,7 @@ public final class Problem implements ProblemPart, Cloneable
 		// Main data
 		for(Object dataEl : rootEl.getChildren("data"))
 		{
-			newProb.addData(DataSet.fromXml((Element) dataEl));
+			newProb.addData(DataSet.fromXml((Element) dataEl, values));
 		}
 
 		// Add the unattached operations, if applicable
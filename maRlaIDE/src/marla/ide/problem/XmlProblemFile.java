@@ -0,0 +1,401 @@
+/*
+ * The maRla Project - Graphical problem solver for statistical calculations.
+ * Copyright © 2011 Cedarville University
+ * http://marla.googlecode.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package marla.ide.problem;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.Queue;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import org.apache.commons.io.IOUtils;
+import org.jdom.Attribute;
+import org.jdom.Element;
+import org.jdom.Text;
+
+/**
+ * Saves and loads problems in the normal XML save format without ever holding
+ * the column values as XML. Everything but the values is still built as a
+ * (small) JDOM tree by the usual toXml() and fromXml() methods, but the values
+ * themselves are streamed straight from the columns when writing and straight
+ * into column storage when reading. Files are interchangeable with ones
+ * written and read entirely through JDOM.
+ * @author Ryan Morehart
+ */
+final class XmlProblemFile
+{
+	/**
+	 * Indentation added for each level of the tree
+	 */
+	private static final String INDENT = "  ";
+	/**
+	 * Line separator used between elements
+	 */
+	private static final String NEWLINE = "\n";
+	/**
+	 * Size of the buffers used around the file
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Not meant to be created
+	 */
+	private XmlProblemFile()
+	{
+	}
+
+	/**
+	 * Writes the given problem to the file
+	 * @param prob Problem to save
+	 * @param fileName Path of the file to write. It will be overwritten
+	 * @throws IOException Thrown if the file can't be written
+	 * @throws XMLStreamException Thrown if the XML can't be written
+	 */
+	static void write(Problem prob, String fileName) throws IOException, XMLStreamException
+	{
+		Element rootEl = prob.toXml(false);
+
+		OutputStream fileOut = new BufferedOutputStream(new FileOutputStream(fileName), BUFFER_SIZE);
+		try
+		{
+			XMLStreamWriter out = XMLOutputFactory.newInstance().createXMLStreamWriter(fileOut, "UTF-8");
+			out.writeStartDocument("UTF-8", "1.0");
+			out.writeCharacters(NEWLINE);
+
+			// Values go with the columns of the top-level DataSets, in order
+			out.writeStartElement(rootEl.getName());
+			writeAttributes(out, rootEl);
+
+			int dataIndex = 0;
+			for(Object contentObj : rootEl.getContent())
+			{
+				if(contentObj instanceof Element && ((Element) contentObj).getName().equals("data"))
+				{
+					out.writeCharacters(NEWLINE + INDENT);
+					writeData(out, (Element) contentObj, prob.getData(dataIndex), 1);
+					dataIndex++;
+				}
+				else
+					writeContent(out, contentObj, 1);
+			}
+
+			out.writeCharacters(NEWLINE);
+			out.writeEndElement();
+			out.writeCharacters(NEWLINE);
+			out.writeEndDocument();
+			out.close();
+
+			fileOut.close();
+		}
+		finally
+		{
+			IOUtils.closeQuietly(fileOut);
+		}
+	}
+
+	/**
+	 * Writes a DataSet's element, streaming each column's values from the
+	 * DataSet itself
+	 * @param out Stream to write to
+	 * @param dataEl Element for the DataSet, without column values
+	 * @param ds DataSet the element came from
+	 * @param depth Depth of the element in the tree
+	 * @throws XMLStreamException Thrown if the XML can't be written
+	 */
+	private static void writeData(XMLStreamWriter out, Element dataEl, DataSet ds, int depth) throws XMLStreamException
+	{
+		out.writeStartElement(dataEl.getName());
+		writeAttributes(out, dataEl);
+
+		String indent = NEWLINE + indent(depth + 1);
+		String valueIndent = NEWLINE + indent(depth + 2);
+
+		int colIndex = 0;
+		for(Object contentObj : dataEl.getContent())
+		{
+			if(contentObj instanceof Element && ((Element) contentObj).getName().equals("column"))
+			{
+				Element colEl = (Element) contentObj;
+				DataColumn col = ds.getColumn(colIndex);
+				colIndex++;
+
+				out.writeCharacters(indent);
+				if(col.isEmpty())
+				{
+					out.writeEmptyElement(colEl.getName());
+					writeAttributes(out, colEl);
+					continue;
+				}
+
+				out.writeStartElement(colEl.getName());
+				writeAttributes(out, colEl);
+
+				for(Object val : col)
+				{
+					out.writeCharacters(valueIndent);
+					out.writeStartElement("value");
+					out.writeCharacters(val.toString());
+					out.writeEndElement();
+				}
+
+				out.writeCharacters(indent);
+				out.writeEndElement();
+			}
+			else
+				writeContent(out, contentObj, depth + 1);
+		}
+
+		out.writeCharacters(NEWLINE + indent(depth));
+		out.writeEndElement();
+	}
+
+	/**
+	 * Writes a piece of element content. Child elements are placed on their
+	 * own lines, indented by their depth
+	 * @param out Stream to write to
+	 * @param contentObj JDOM content to write
+	 * @param depth Depth of the content in the tree
+	 * @throws XMLStreamException Thrown if the XML can't be written
+	 */
+	private static void writeContent(XMLStreamWriter out, Object contentObj, int depth) throws XMLStreamException
+	{
+		if(contentObj instanceof Element)
+		{
+			out.writeCharacters(NEWLINE + indent(depth));
+			writeElement(out, (Element) contentObj, depth);
+		}
+		else if(contentObj instanceof Text)
+			out.writeCharacters(((Text) contentObj).getText());
+	}
+
+	/**
+	 * Writes an element and everything in it
+	 * @param out Stream to write to
+	 * @param el Element to write
+	 * @param depth Depth of the element in the tree
+	 * @throws XMLStreamException Thrown if the XML can't be written
+	 */
+	private static void writeElement(XMLStreamWriter out, Element el, int depth) throws XMLStreamException
+	{
+		if(el.getContentSize() == 0)
+		{
+			out.writeEmptyElement(el.getName());
+			writeAttributes(out, el);
+			return;
+		}
+
+		out.writeStartElement(el.getName());
+		writeAttributes(out, el);
+
+		for(Object contentObj : el.getContent())
+			writeContent(out, contentObj, depth + 1);
+
+		// Only put the end on its own line if the children were
+		if(!el.getChildren().isEmpty())
+			out.writeCharacters(NEWLINE + indent(depth));
+
+		out.writeEndElement();
+	}
+
+	/**
+	 * Writes each of an element's attributes
+	 * @param out Stream to write to
+	 * @param el Element whose attributes should be written
+	 * @throws XMLStreamException Thrown if the XML can't be written
+	 */
+	private static void writeAttributes(XMLStreamWriter out, Element el) throws XMLStreamException
+	{
+		for(Object attrObj : el.getAttributes())
+		{
+			Attribute attr = (Attribute) attrObj;
+			out.writeAttribute(attr.getName(), attr.getValue());
+		}
+	}
+
+	/**
+	 * Creates the indentation for the given depth in the tree
+	 * @param depth Depth to indent to
+	 * @return Whitespace to place before an element at that depth
+	 */
+	private static String indent(int depth)
+	{
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < depth; i++)
+			sb.append(INDENT);
+		return sb.toString();
+	}
+
+	/**
+	 * Reads a problem from the given XML file
+	 * @param fileName Path of the file to read
+	 * @return Restored problem
+	 * @throws IOException Thrown if the file can't be read
+	 * @throws XMLStreamException Thrown if the file contains invalid XML
+	 */
+	static Problem read(String fileName) throws IOException, XMLStreamException
+	{
+		InputStream fileIn = new BufferedInputStream(new FileInputStream(fileName), BUFFER_SIZE);
+		try
+		{
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+			XMLStreamReader in = factory.createXMLStreamReader(fileIn);
+
+			// Move to the root element
+			while(in.getEventType() != XMLStreamConstants.START_ELEMENT)
+				in.next();
+
+			// Values of the top-level DataSet's columns are kept aside, in order,
+			// to be handed over as the columns are created
+			final Queue<DataColumn> loadedColumns = new LinkedList<DataColumn>();
+			Element rootEl = startElement(in);
+			while(in.next() != XMLStreamConstants.END_ELEMENT)
+			{
+				if(in.getEventType() == XMLStreamConstants.START_ELEMENT && in.getLocalName().equals("data"))
+					rootEl.addContent(readData(in, loadedColumns));
+				else
+					readContent(in, rootEl);
+			}
+
+			in.close();
+
+			return Problem.fromXml(rootEl, new ColumnValueSource()
+			{
+				@Override
+				public void readValues(DataColumn col) throws IOException
+				{
+					DataColumn loaded = loadedColumns.poll();
+					if(loaded == null)
+						throw new IOException("Column '" + col.getName() + "' has no values loaded");
+
+					col.takeValues(loaded);
+				}
+			});
+		}
+		finally
+		{
+			IOUtils.closeQuietly(fileIn);
+		}
+	}
+
+	/**
+	 * Reads a DataSet's element. The values of each column go directly into
+	 * a new column, which is added to the given queue, rather than the element
+	 * @param in Stream positioned at the start of the DataSet element
+	 * @param loadedColumns Queue to add the column values to
+	 * @return Element for the DataSet, without column values
+	 * @throws XMLStreamException Thrown if the file contains invalid XML
+	 */
+	private static Element readData(XMLStreamReader in, Queue<DataColumn> loadedColumns) throws XMLStreamException
+	{
+		Element dataEl = startElement(in);
+		while(in.next() != XMLStreamConstants.END_ELEMENT)
+		{
+			if(in.getEventType() == XMLStreamConstants.START_ELEMENT && in.getLocalName().equals("column"))
+			{
+				Element colEl = startElement(in);
+				dataEl.addContent(colEl);
+
+				DataColumn col = new DataColumn(null, colEl.getAttributeValue("name"));
+				loadedColumns.add(col);
+
+				while(in.next() != XMLStreamConstants.END_ELEMENT)
+				{
+					if(in.getEventType() != XMLStreamConstants.START_ELEMENT)
+						continue;
+
+					if(in.getLocalName().equals("value"))
+						col.add(in.getElementText());
+					else
+						readContent(in, colEl);
+				}
+			}
+			else
+				readContent(in, dataEl);
+		}
+
+		return dataEl;
+	}
+
+	/**
+	 * Adds the current piece of content from the stream to the given element.
+	 * If it is an element, the entire element is read
+	 * @param in Stream positioned at the content
+	 * @param parentEl Element to add the content to
+	 * @throws XMLStreamException Thrown if the file contains invalid XML
+	 */
+	private static void readContent(XMLStreamReader in, Element parentEl) throws XMLStreamException
+	{
+		switch(in.getEventType())
+		{
+			case XMLStreamConstants.START_ELEMENT:
+				parentEl.addContent(readElement(in));
+				break;
+
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				parentEl.addContent(in.getText());
+				break;
+
+			default:
+				// Comments and the like aren't part of a problem
+				break;
+		}
+	}
+
+	/**
+	 * Reads an element and everything in it
+	 * @param in Stream positioned at the start of the element
+	 * @return Element read
+	 * @throws XMLStreamException Thrown if the file contains invalid XML
+	 */
+	private static Element readElement(XMLStreamReader in) throws XMLStreamException
+	{
+		Element el = startElement(in);
+		while(in.next() != XMLStreamConstants.END_ELEMENT)
+			readContent(in, el);
+
+		return el;
+	}
+
+	/**
+	 * Creates an element with the name and attributes of the current start tag
+	 * @param in Stream positioned at the start of an element
+	 * @return New element, without any content
+	 */
+	private static Element startElement(XMLStreamReader in)
+	{
+		Element el = new Element(in.getLocalName());
+		for(int i = 0; i < in.getAttributeCount(); i++)
+			el.setAttribute(in.getAttributeLocalName(i), in.getAttributeValue(i));
+
+		return el;
+	}
+}
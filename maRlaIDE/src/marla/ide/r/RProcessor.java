@@ -21,16 +21,37 @@ package marla.ide.r;
 
 import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import marla.ide.resource.Configuration.ConfigType;
 import marla.ide.resource.ConfigurationException;
+import org.apache.commons.io.IOUtils;
 
 /**
  * Interfaces with R through the command line interface
@@ -46,6 +67,14 @@ public final class RProcessor
 	 * Return from R for the command given in SENTINEL_STRING_CMD, we watch for this result
 	 */
 	private final String SENTINEL_STRING_RETURN = "[1] \"---MARLA R OUTPUT END---\"";
+	/**
+	 * Sent to R between the commands of a batch so their output may be split apart
+	 */
+	private final String SEPARATOR_STRING_CMD = "cat('---MARLA R COMMAND END---\\n')\n";
+	/**
+	 * Output from R for SEPARATOR_STRING_CMD
+	 */
+	private final String SEPARATOR_STRING_RETURN = "---MARLA R COMMAND END---";
 	/**
 	 * Pattern used to recognize single R commands. Used by execute() to protect from
 	 * hangs resulting from multiple commands being passed in. Does not allow
@@ -53,33 +82,93 @@ public final class RProcessor
 	 */
 	private final Pattern singleCmdPatt = Pattern.compile("^[^\\n;]+[\\n;]?$");
 	/**
-	 * Pattern used to recognize doubles in R output, mainly for use with vectors
+	 * Pattern used to recognize commands which set up the R session (options and
+	 * libraries) rather than compute something. These are replayed if R has to be
+	 * restarted after dying
 	 */
-	private final Pattern doublePatt = Pattern.compile("(?<=\\s)(-?[0-9]+(\\.[0-9]+)?(e[+-][0-9]+)?|NaN|-?Inf)(?=\\s|$)");
+	private static final Pattern warmUpPatt = Pattern.compile("^\\s*(options|library|require)\\s*\\(.*");
 	/**
-	 * Pattern used to recognize strings in R output, mainly for use with vectors
+	 * Path to the R executable, used if R has to be reloaded after it dies
 	 */
-	private final Pattern stringPatt = Pattern.compile("\"(([^\\n]|\\\")*?)\"");
+	private static String rPath = null;
 	/**
-	 * Pattern used to recognize booleans in R output, mainly for use with vectors
+	 * Directory that R is running from. Each processor has its own, so that
+	 * files written by one (plots, transfer files) never collide with another's
 	 */
-	private final Pattern booleanPatt = Pattern.compile("(?<=\\s)(FALSE|TRUE)(?=\\s|$)");
+	private String workingDirectory = null;
 	/**
-	 * Path to the R executable, used if R has to be reloaded after it dies
+	 * The R process itself
 	 */
-	private static String rPath = null;
+	private volatile Process rProc = null;
 	/**
-	 * Single instance of RProcessor that we allow
+	 * Thread watching the current R process for it exiting on its own
 	 */
-	private static RProcessor singleRProcessor = null;
+	private volatile Thread supervisor = null;
 	/**
-	 * Directory that R is running from
+	 * True once close() has been called, after which R is never restarted
 	 */
-	private String workingDirectory = null;
+	private volatile boolean closing = false;
 	/**
-	 * The R process itself
+	 * Commands which set up the R session, in the order they were first run.
+	 * Replayed when R is restarted. Only used on the I/O thread
+	 */
+	private final List<String> warmUpCmds = new ArrayList<String>();
+	/**
+	 * Seconds new processors allow a command to run before giving up on it,
+	 * 0 to wait forever
+	 */
+	private static int defaultTimeout = 300;
+	/**
+	 * Where missing libraries are installed from: a URL to a CRAN-style
+	 * repository, a local directory holding a repository or package files,
+	 * or null to never install
+	 */
+	private static String packageRepository = "http://cran.r-project.org";
+	/**
+	 * Libraries which could not be loaded or installed this session. They are
+	 * not attempted again until the repository changes
+	 */
+	private static final Set<String> failedLibraries = new HashSet<String>();
+	/**
+	 * Seconds this processor allows a command to run before giving up on it,
+	 * 0 to wait forever
+	 */
+	private int timeout = defaultTimeout;
+	/**
+	 * Seconds a caller waits for R to come back after its command is cancelled
+	 */
+	private static final int CANCEL_WAIT = 30;
+	/**
+	 * Milliseconds between checks for whether a waiting command has been sent
+	 * to R yet, so its timeout may start
+	 */
+	private static final long START_CHECK_INTERVAL = 500;
+	/**
+	 * Commands currently being exchanged with R, null if R is idle. Only
+	 * changed while holding cancelSync
+	 */
+	private List<QueuedCommand> running = null;
+	/**
+	 * System.nanoTime() at which the running commands were sent to R
+	 */
+	private long runningSince = 0;
+	/**
+	 * Reason the command currently running was cancelled, null if it hasn't been
+	 */
+	private volatile String cancelReason = null;
+	/**
+	 * Synchronization for cancelling, ensures only the intended commands are killed
 	 */
-	private Process rProc = null;
+	private final Object cancelSync = new Object();
+	/**
+	 * R's garbage collector is run after this many scopes end, 0 to leave
+	 * it entirely to R
+	 */
+	private static int gcInterval = 20;
+	/**
+	 * Number of scopes ended since R's garbage collector was last run
+	 */
+	private int scopesSinceGc = 0;
 	/**
 	 * The R process's output stream, where we get the results from
 	 */
@@ -92,6 +181,20 @@ public final class RProcessor
 	 * Synchronization variable
 	 */
 	private final Object processSync = new Object();
+	/**
+	 * Thread which does all reading and writing to R. Commands are run in the
+	 * order they are submitted
+	 */
+	private final ExecutorService ioThread = Executors.newSingleThreadExecutor(new ThreadFactory()
+	{
+		@Override
+		public Thread newThread(Runnable r)
+		{
+			Thread t = new Thread(r, "R I/O");
+			t.setDaemon(true);
+			return t;
+		}
+	});
 	/**
 	 * Denotes the mode the RProcessor is
 	 */
@@ -112,6 +215,23 @@ public final class RProcessor
 	 * Stores the next value to use for the "unique" name generator
 	 */
 	private long uniqueValCounter = 0;
+	/**
+	 * Vectors with at least this many values are transferred to and from R
+	 * through a binary file rather than as text
+	 */
+	private static int binaryThreshold = 1000;
+	/**
+	 * Source of binary transfer file names, shared by every processor
+	 */
+	private static final AtomicLong transferFileCounter = new AtomicLong();
+	/**
+	 * Commands held by queue() to be sent together, null when no batch is open
+	 */
+	private List<QueuedCommand> batch = null;
+	/**
+	 * Binary transfer files which queued commands still need to read
+	 */
+	private final List<File> pendingFiles = new ArrayList<File>();
 
 	/**
 	 * Enumeration denoting the record mode the R processor can use
@@ -122,28 +242,76 @@ public final class RProcessor
 	};
 
 	/**
-	 * Creates a new R instance that can be fed commands
+	 * A command waiting to be sent to R, along with how it should be recorded
+	 */
+	private static class QueuedCommand
+	{
+		/**
+		 * R command to run
+		 */
+		private final String cmd;
+		/**
+		 * Command to place in the record
+		 */
+		private final String record;
+		/**
+		 * Recording mode in place when the command was given
+		 */
+		private final RecordMode mode;
+		/**
+		 * true if errors from R should be returned rather than thrown
+		 */
+		private final boolean ignoreErrors;
+		/**
+		 * true if the command depends on nothing earlier commands set up in R,
+		 * so it may be run again on a freshly restarted process
+		 */
+		private final boolean retryable;
+
+		/**
+		 * Creates a new command to be sent. Session setup commands (options
+		 * and libraries) are the only ones considered safe to retry
+		 * @param cmd R command to run
+		 * @param record Command to place in the record
+		 * @param mode Recording mode in place when the command was given
+		 * @param ignoreErrors true if errors from R should be returned rather than thrown
+		 */
+		private QueuedCommand(String cmd, String record, RecordMode mode, boolean ignoreErrors)
+		{
+			this(cmd, record, mode, ignoreErrors, warmUpPatt.matcher(cmd.trim()).matches());
+		}
+
+		/**
+		 * Creates a new command to be sent
+		 * @param cmd R command to run
+		 * @param record Command to place in the record
+		 * @param mode Recording mode in place when the command was given
+		 * @param ignoreErrors true if errors from R should be returned rather than thrown
+		 * @param retryable true if the command may be run again on a restarted process
+		 */
+		private QueuedCommand(String cmd, String record, RecordMode mode, boolean ignoreErrors, boolean retryable)
+		{
+			this.cmd = cmd;
+			this.record = record;
+			this.mode = mode;
+			this.ignoreErrors = ignoreErrors;
+			this.retryable = retryable;
+		}
+	}
+
+	/**
+	 * Creates a new R instance that can be fed commands. Only RProcessorPool
+	 * should create new instances
 	 * @param newRPath R executable to run
 	 */
-	private RProcessor(String newRPath)
+	RProcessor(String newRPath)
 	{
 		try
 		{
 			if(newRPath == null)
 				throw new ConfigurationException("R processor not configured yet", ConfigType.R);
 
-			// Start up R in the temp directory;
-			ProcessBuilder builder = new ProcessBuilder(rPath, "--slave", "--no-readline");
-			builder.directory(new File(System.getProperty("java.io.tmpdir")));
-			workingDirectory = builder.directory().getAbsolutePath();
-			builder.redirectErrorStream(true);
-			rProc = builder.start();
-
-			// Hook up streams. I swear the names of these streams are
-			// confusing in the Java API. Input stream is the _output_ from the
-			// process. It's input to us, I guess.
-			procOut = new BufferedReader(new InputStreamReader(rProc.getInputStream()));
-			procIn = (BufferedOutputStream) rProc.getOutputStream();
+			startProcess();
 
 			// Set options and eat up an error about "no --no-readline"
 			// option on Windows if needed.
@@ -156,8 +324,174 @@ public final class RProcessor
 		}
 		catch(IOException ex)
 		{
+			shutDown();
 			throw new ConfigurationException("R could not be executed at '" + rPath + "'", ConfigType.R);
 		}
+		catch(RuntimeException ex)
+		{
+			shutDown();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Forcibly stops everything a partly constructed processor started: the
+	 * I/O thread and any R process
+	 */
+	private void shutDown()
+	{
+		closing = true;
+		stopSupervisor();
+		ioThread.shutdownNow();
+
+		Process proc = rProc;
+		if(proc != null)
+			proc.destroy();
+	}
+
+	/**
+	 * Starts a new R process and hooks up its streams, along with a thread
+	 * which restarts it should it die while we're still using it
+	 * @throws IOException Thrown if R could not be executed
+	 */
+	private void startProcess() throws IOException
+	{
+		// Start up R in our own temp directory. Kept across restarts so
+		// plots made before R died remain where we said they were
+		if(workingDirectory == null)
+			workingDirectory = createWorkingDirectory().getAbsolutePath();
+		ProcessBuilder builder = new ProcessBuilder(rPath, "--slave", "--no-readline");
+		builder.directory(new File(workingDirectory));
+		builder.redirectErrorStream(true);
+		final Process proc = builder.start();
+
+		// Hook up streams. I swear the names of these streams are
+		// confusing in the Java API. Input stream is the _output_ from the
+		// process. It's input to us, I guess.
+		procOut = new BufferedReader(new InputStreamReader(proc.getInputStream()));
+		procIn = (BufferedOutputStream) proc.getOutputStream();
+		rProc = proc;
+
+		// Watch for R exiting on its own. The restart is done on the I/O
+		// thread, so it happens before any command sent after the death.
+		// Whatever was watching the old process is no longer needed
+		stopSupervisor();
+		Thread watcher = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					proc.waitFor();
+				}
+				catch(InterruptedException ex)
+				{
+					return;
+				}
+
+				if(closing || proc != rProc)
+					return;
+
+				try
+				{
+					ioThread.execute(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							// A command may have already found it dead and restarted it
+							if(closing || proc != rProc)
+								return;
+
+							try
+							{
+								restart();
+							}
+							catch(IOException ex)
+							{
+								close();
+							}
+							catch(RuntimeException ex)
+							{
+								close();
+							}
+						}
+					});
+				}
+				catch(RejectedExecutionException ex)
+				{
+					// Closed while we waited
+				}
+			}
+		}, "R Supervisor");
+		watcher.setDaemon(true);
+		supervisor = watcher;
+		watcher.start();
+	}
+
+	/**
+	 * Creates a new, empty directory for an R process to work in. It is
+	 * removed when maRla exits, after the files in it which are marked for
+	 * deletion the same way
+	 * @return Newly created directory
+	 * @throws IOException Thrown if the directory could not be created
+	 */
+	private static File createWorkingDirectory() throws IOException
+	{
+		File dir = File.createTempFile("marlaR", "");
+		if(!dir.delete() || !dir.mkdir())
+			throw new IOException("Unable to create R working directory '" + dir + "'");
+
+		dir.deleteOnExit();
+		return dir;
+	}
+
+	/**
+	 * Returns the directory R is running in, where it writes any files
+	 * given by a relative path
+	 * @return Absolute path of R's working directory
+	 */
+	public String getWorkingDirectory()
+	{
+		return workingDirectory;
+	}
+
+	/**
+	 * Stops the thread watching the R process, if there is one
+	 */
+	private void stopSupervisor()
+	{
+		Thread old = supervisor;
+		supervisor = null;
+		if(old != null)
+			old.interrupt();
+	}
+
+	/**
+	 * Throws away the current R process and starts a new one, replaying the
+	 * commands which set up the session (options and loaded libraries). Variables
+	 * set in the old process are lost. Only called on the I/O thread
+	 * @throws IOException Thrown if the new process could not be started or died
+	 *		while being set up
+	 */
+	private void restart() throws IOException
+	{
+		Process old = rProc;
+		IOUtils.closeQuietly(procIn);
+		IOUtils.closeQuietly(procOut);
+		if(old != null)
+			old.destroy();
+
+		startProcess();
+
+		if(!warmUpCmds.isEmpty())
+		{
+			List<QueuedCommand> cmds = new ArrayList<QueuedCommand>(warmUpCmds.size());
+			for(String cmd : warmUpCmds)
+				cmds.add(new QueuedCommand(cmd, cmd, RecordMode.DISABLED, true));
+			exchange(buildCommand(cmds), new boolean[cmds.size()]);
+		}
 	}
 
 	/**
@@ -200,17 +534,16 @@ public final class RProcessor
 	 * Creates a new instance of R which can be fed commands. Assumes R is accessible on the path.
 	 * If it isn't, RProcessor then searches for an installation alongside itself (in an
 	 * R directory, so the R executable is at R/bin/R), then in common system install
-	 * locations for Windows, Linux, and OSX.
+	 * locations for Windows, Linux, and OSX. The instance returned is the primary
+	 * process of the RProcessorPool, callers which need a process to themselves
+	 * should lease one from the pool instead.
 	 * @return Instance of RProcessor that can be used for calculations
 	 */
 	public static RProcessor getInstance()
 	{
 		try
 		{
-			if(singleRProcessor == null)
-				singleRProcessor = new RProcessor(rPath);
-
-			return singleRProcessor;
+			return RProcessorPool.getInstance().getPrimary();
 		}
 		catch(RProcessorException ex)
 		{
@@ -219,18 +552,13 @@ public final class RProcessor
 	}
 
 	/**
-	 * Kills any existing instances of the RProcessor and starts a new one.
+	 * Kills any existing instances of the RProcessor (including those in the
+	 * pool) and starts a new one.
 	 * @return Newly created RProcessor instance
 	 */
 	public static RProcessor restartInstance()
 	{
-		if(singleRProcessor != null)
-		{
-			// Make sure the previous one closed properly
-			singleRProcessor.close();
-			singleRProcessor = null;
-		}
-
+		RProcessorPool.getInstance().restart();
 		return getInstance();
 	}
 
@@ -240,7 +568,7 @@ public final class RProcessor
 	 */
 	public static boolean hasInstance()
 	{
-		return (singleRProcessor != null);
+		return RProcessorPool.getInstance().hasPrimary();
 	}
 
 	/**
@@ -269,6 +597,9 @@ public final class RProcessor
 	 */
 	public void close()
 	{
+		closing = true;
+		stopSupervisor();
+
 		try
 		{
 			// Only bother if we're not already dead
@@ -299,6 +630,9 @@ public final class RProcessor
 			procIn = null;
 			procOut = null;
 			System.gc();
+
+			// Anything still waiting finds R dead
+			ioThread.shutdown();
 		}
 	}
 
@@ -311,7 +645,25 @@ public final class RProcessor
 		if(rProc == null || procIn == null || procOut == null)
 			return false;
 		else
+			return !hasExited(rProc);
+	}
+
+	/**
+	 * Checks if the given process has exited
+	 * @param proc Process to check
+	 * @return true if the process is no longer running
+	 */
+	private static boolean hasExited(Process proc)
+	{
+		try
+		{
+			proc.exitValue();
 			return true;
+		}
+		catch(IllegalThreadStateException ex)
+		{
+			return false;
+		}
 	}
 
 	/**
@@ -329,7 +681,8 @@ public final class RProcessor
 	/**
 	 * Passes the given string onto R just as if you typed it at the command line. Only a single
 	 * command may be executed by this command. If the user wants to run multiple commands as a
-	 * group, use execute(ArrayList<String>).
+	 * group, use execute(ArrayList<String>). Any commands queued in an open batch are sent
+	 * along with this one.
 	 * @param cmd R command to execute
 	 * @param ignoreErrors true if errors and warnings from R should be ignored and just
 	 *		be returned with the rest of the output. If false, exceptions are thrown
@@ -338,243 +691,931 @@ public final class RProcessor
 	 */
 	public String execute(String cmd, boolean ignoreErrors)
 	{
-		// Ensure the processor is still running
-		if(!isRunning())
-			throw new RProcessorDeadException("R process has been closed.");
-
-		// Check if there are multiple commands in the string.
-		// Seriously, that's dangerous for us, could make us hang.
-		Matcher m = singleCmdPatt.matcher(cmd);
-		if(!m.matches())
-			throw new RProcessorException("execute() may only be given one command at a time");
-
-		// Start building up our nice command
-		StringBuilder sentinelCmd = new StringBuilder(cmd.trim());
-		sentinelCmd.append('\n');
-
-		// Record and/or output if needed
-		if(recordMode == RecordMode.CMDS_ONLY || recordMode == RecordMode.FULL)
-			interactionRecord.append(sentinelCmd);
-		if(debugOutputMode == RecordMode.CMDS_ONLY || debugOutputMode == RecordMode.FULL)
-			System.out.print("> " + sentinelCmd);
-
-		try
-		{
-			// Final R return stored here
-			String results = null;
-			
-			// Indicate if R throws an error or warning
-			boolean errorOccurred = false;
-
-			// Only one thread may access the R input/output at one time
-			synchronized(processSync)
-			{
-				// Send command with a sentinel at the end so we know when the output is done
-				sentinelCmd.append(this.SENTINEL_STRING_CMD);
-				byte[] cmdArray = sentinelCmd.toString().getBytes();
-				procIn.write(cmdArray, 0, cmdArray.length);
-				procIn.flush();
-
-				// Get results back
-				StringBuilder sb = new StringBuilder();
-				String line = procOut.readLine();
-				while(line != null && !line.equals(this.SENTINEL_STRING_RETURN))
-				{
-					sb.append(line);
-					sb.append('\n');
-
-					if(!ignoreErrors && (line.startsWith("Error") || line.startsWith("Warning")))
-						errorOccurred = true;
-
-					line = procOut.readLine();
-				}
-
-				// Convert to string
-				results = sb.toString();
-			}
-
-			// Record interaction if needed
-			if(recordMode == RecordMode.OUTPUT_ONLY || recordMode == RecordMode.FULL)
-				interactionRecord.append(results);
-			if(debugOutputMode == RecordMode.OUTPUT_ONLY || debugOutputMode == RecordMode.FULL)
-				System.out.print(results);
-
-			// Throw an error if we encountered an error or warning
-			if(errorOccurred)
-				throw new RProcessorException("R: " + results);
-
-			// Return results, the caller is responsible for processing further
-			return results;
-		}
-		catch(IOException ex)
-		{
-			// Unable to read/write to pipes. Try to kill off the process completely to allow
-			// us to be restarted
-			close();
-			throw new RProcessorException("Unable to read or write to the R instance", ex);
-		}
+		return execute(cmd, cmd, ignoreErrors);
 	}
 
 	/**
-	 * Calls execute(String) for each of the commands given in the cmds array. Commands will
-	 * be automatically terminated with a newline if they does not have one.
-	 * @param cmds List of R commands to execute
-	 * @return ArrayList of Strings, where each entry is the output from one of the commands given.
+	 * Runs the given command, sending along any commands waiting in an open batch
+	 * @param cmd R command to execute
+	 * @param recordAs Command to place in the record in place of cmd
+	 * @param ignoreErrors true if errors and warnings from R should be ignored
+	 * @return String output from R for cmd
 	 */
-	public List<String> execute(List<String> cmds)
+	private String execute(String cmd, String recordAs, boolean ignoreErrors)
 	{
-		List<String> output = new ArrayList<String>(cmds.size());
-
-		for(String cmd : cmds)
-		{
-			output.add(execute(cmd));
-		}
-		return output;
+		return execute(new QueuedCommand(cmd, recordAs, recordMode, ignoreErrors));
 	}
 
 	/**
-	 * Convenience function that executes the given command and parses the result as a single double
-	 * value. An exception is thrown if there is not exactly one double in the output.
-	 * @param cmd R command to execute
-	 * @return Double value of the R call
+	 * Runs the given command, sending along any commands waiting in an open batch
+	 * @param queued Command to execute
+	 * @return String output from R for the command
 	 */
-	public Double executeDouble(String cmd)
+	private String execute(QueuedCommand queued)
 	{
-		return parseDouble(execute(cmd));
+		List<QueuedCommand> toSend = takeBatch();
+		toSend.add(queued);
+
+		List<String> output = send(toSend);
+		return output.get(output.size() - 1);
 	}
 
 	/**
-	 * Convenience function that executes the given command and parses the result as a vector
-	 * of doubles. An exception is thrown if the output does not contain numerical values.
-	 * @param cmd R command to execute
-	 * @return ArrayList of doubles that the R command returned
+	 * Sends all of the given commands to R at once, rather than waiting for each to
+	 * complete before sending the next. The output of each command is still returned
+	 * separately. If any command causes an error, an exception is thrown after all
+	 * have run, so unlike calling execute(String) for each in turn, commands after a
+	 * failing one are still run by R. Commands will be automatically terminated with
+	 * a newline if they does not have one.
+	 * @param cmds List of R commands to execute
+	 * @return ArrayList of Strings, where each entry is the output from one of the commands given.
 	 */
-	public List<Double> executeDoubleArray(String cmd)
+	public List<String> execute(List<String> cmds)
 	{
-		return parseDoubleArray(execute(cmd));
+		List<QueuedCommand> toSend = takeBatch();
+		int skip = toSend.size();
+
+		for(String cmd : cmds)
+			toSend.add(new QueuedCommand(cmd, cmd, recordMode, false));
+
+		List<String> output = send(toSend);
+		return new ArrayList<String>(output.subList(skip, output.size()));
 	}
 
 	/**
-	 * Convenience function that executes the given command and parses the result as a string. An
-	 * exception is thrown if there is not exactly one string in the output.
+	 * Runs the given command when its output is not needed. If a batch is open
+	 * (see startBatch()), the command is held and sent along with whatever command
+	 * next needs output or when the batch ends, saving a round trip to R. Otherwise
+	 * it is run immediately. Errors from held commands are thrown when they are sent.
 	 * @param cmd R command to execute
-	 * @return String value of the R call
 	 */
-	public String executeString(String cmd)
+	public void queue(String cmd)
 	{
-		return parseString(execute(cmd));
+		queue(cmd, cmd);
 	}
 
 	/**
-	 * Convenience function that executes the given command and parses the result as a vector of
-	 * strings. An exception is thrown if there are no strings in the output.
+	 * Runs or holds the given command, as with queue(String)
 	 * @param cmd R command to execute
-	 * @return ArrayList of strings that the R command returned
+	 * @param recordAs Command to place in the record in place of cmd
 	 */
-	public List<String> executeStringArray(String cmd)
+	private void queue(String cmd, String recordAs)
 	{
-		return parseStringArray(execute(cmd));
+		queue(new QueuedCommand(cmd, recordAs, recordMode, false));
 	}
 
 	/**
-	 * Convenience function that executes the given command and parses the result as a boolean. An
-	 * exception is thrown if there is not exactly one boolean in the output.
+	 * Runs or holds a command which assigns values given entirely in the
+	 * command (or in a transfer file) to a variable. Such commands rely on
+	 * nothing else in R, so they may be retried should R die while running them
 	 * @param cmd R command to execute
-	 * @return String value of the R call
+	 * @param recordAs Command to place in the record in place of cmd
 	 */
-	public Boolean executeBoolean(String cmd)
+	private void queueAssignment(String cmd, String recordAs)
 	{
-		return parseBoolean(execute(cmd));
+		queue(new QueuedCommand(cmd, recordAs, recordMode, false, true));
 	}
 
 	/**
-	 * Convenience function that executes the given command and parses the result as a vector of
-	 * booleans. An exception is thrown if there are no booleans in the output.
-	 * @param cmd R command to execute
-	 * @return ArrayList of strings that the R command returned
+	 * Runs or holds the given command, as with queue(String)
+	 * @param queued Command to execute
 	 */
-	public List<Boolean> executeBooleanArray(String cmd)
+	private void queue(QueuedCommand queued)
 	{
-		return parseBooleanArray(execute(cmd));
+		if(batch == null)
+			execute(queued);
+		else
+		{
+			checkSingleCmd(queued.cmd);
+			batch.add(queued);
+		}
 	}
 
 	/**
-	 * Runs the given command and saves it into a new, unique variable. The variable name used
-	 * is returned as a string. Only one command may be given, an exception is thrown if this
-	 * isn't true.
+	 * Runs or holds the given command as with queue(String), but never places
+	 * it in the record. Used for housekeeping the user has no interest in
 	 * @param cmd R command to execute
-	 * @return R variable name that contains the results of the executed command
 	 */
-	public String executeSave(String cmd)
+	private void queueQuiet(String cmd)
 	{
-		String varName = getUniqueName();
-		execute(varName + " = " + cmd);
-		return varName;
+		checkSingleCmd(cmd);
+		QueuedCommand quiet = new QueuedCommand(cmd, cmd, RecordMode.DISABLED, false);
+
+		if(batch == null)
+		{
+			List<QueuedCommand> toSend = new ArrayList<QueuedCommand>();
+			toSend.add(quiet);
+			send(toSend);
+		}
+		else
+			batch.add(quiet);
 	}
 
 	/**
-	 * Takes the given R output and attempts to parse it as a single double value. An exception is
-	 * thrown if there isn't exactly one numerical value in the output.
-	 * @param rOutput R output, as returned by execute(String)
-	 * @return Double value contained in the output
+	 * Marks the start of a set of work whose R variables are only temporary.
+	 * Every variable created after this point is removed by endScope(). Scopes
+	 * may be nested. The marker itself is queued, so it costs nothing extra
+	 * when a batch is open
+	 * @return Marker to hand to endScope()
 	 */
-	public Double parseDouble(String rOutput)
+	public String startScope()
 	{
-		ArrayList<Double> arr = parseDoubleArray(rOutput);
-
-		if(arr.size() != 1)
-			throw new RProcessorParseException("The R result was not a single double value");
-
-		return arr.get(0);
+		String scopeVar = getUniqueName();
+		queueQuiet(scopeVar + " <- ls()");
+		return scopeVar;
 	}
 
 	/**
-	 * Takes the given R output and attempts to parse it as a vector of doubles. An exception is
-	 * thrown if there are no numerical values.
-	 * @param rOutput R output, as returned by execute(String)
-	 * @return ArrayList of Doubles from the output
+	 * Removes every variable created since the matching startScope(), in a
+	 * single command, and periodically runs R's garbage collector. Safe to
+	 * call even if the start of the scope was never sent to R
+	 * @param scopeVar Marker returned by startScope()
 	 */
-	public ArrayList<Double> parseDoubleArray(String rOutput)
+	public void endScope(String scopeVar)
 	{
-		ArrayList<Double> vals = new ArrayList<Double>();
-
+		boolean batchStarted = startBatch();
 		try
 		{
-			Matcher m = doublePatt.matcher(rOutput);
+			queueQuiet("if(exists('" + scopeVar + "')) rm(list=setdiff(ls(), " + scopeVar + "))");
 
-			while(m.find())
+			scopesSinceGc++;
+			if(gcInterval > 0 && scopesSinceGc >= gcInterval)
 			{
-				String d = m.group();
-				if(d.endsWith("Inf"))
-					vals.add(Double.POSITIVE_INFINITY);
-				else if(d.endsWith("-Inf"))
-					vals.add(Double.NEGATIVE_INFINITY);
-				else
-					vals.add(Double.valueOf(d));
+				queueQuiet("invisible(gc())");
+				scopesSinceGc = 0;
 			}
+
+			if(batchStarted)
+				endBatch();
 		}
-		catch(NumberFormatException ex)
+		finally
 		{
-			// Should almost never be hit, as we recognized it with our regex
-			throw new RProcessorParseException("The R result did not contain numeric values");
+			if(batchStarted)
+				cancelBatch();
 		}
-
-		// We clearly weren't supposed to parse the output like this, it wasn't what we wanted
-		if(vals.isEmpty())
-			throw new RProcessorParseException("The R result is not a vector of doubles");
-
-		return vals;
 	}
 
 	/**
-	 * Takes the given R output and attempts to parse it as a single string value. An exception
-	 * is thrown if there isn't exactly one string value in the output.
-	 * @param rOutput R output, as returned by execute(String)
-	 * @return String value contained in the output
+	 * Returns the memory used by the variables currently held in R
+	 * @return Total size in bytes of every variable in R's workspace
 	 */
-	public String parseString(String rOutput)
+	public long getObjectMemory()
 	{
-		ArrayList<String> arr = parseStringArray(rOutput);
+		String cmd = "sum(vapply(ls(all.names=TRUE), function(v) as.numeric(object.size(get(v, envir=globalenv()))), 0))";
+
+		// Not something the user asked R to do, so it stays out of the record
+		List<QueuedCommand> toSend = takeBatch();
+		toSend.add(new QueuedCommand(cmd, cmd, RecordMode.DISABLED, false));
+
+		List<String> output = send(toSend);
+		return parseDouble(output.get(output.size() - 1)).longValue();
+	}
+
+	/**
+	 * Sets how often R's garbage collector is run
+	 * @param newInterval Number of scopes (see startScope()) to end between
+	 *		collections, 0 to leave collection entirely to R
+	 * @return The previously set interval
+	 */
+	public static int setGcInterval(int newInterval)
+	{
+		int oldInterval = gcInterval;
+		gcInterval = newInterval;
+		return oldInterval;
+	}
+
+	/**
+	 * Returns how often R's garbage collector is run
+	 * @return Number of scopes ended between collections, 0 if left to R
+	 */
+	public static int getGcInterval()
+	{
+		return gcInterval;
+	}
+
+	/**
+	 * Begins holding commands given to queue() so that they are sent to R together.
+	 * Does nothing if a batch is already open, in which case the caller should
+	 * leave it to whoever opened it to end the batch.
+	 * @return true if a new batch was opened, which must then be followed by
+	 *		endBatch() or cancelBatch(). false if one was already open
+	 */
+	public boolean startBatch()
+	{
+		if(batch != null)
+			return false;
+
+		batch = new ArrayList<QueuedCommand>();
+		return true;
+	}
+
+	/**
+	 * Sends any commands still held and stops batching
+	 */
+	public void endBatch()
+	{
+		if(batch == null)
+			return;
+
+		List<QueuedCommand> toSend = takeBatch();
+		batch = null;
+
+		if(!toSend.isEmpty())
+			send(toSend);
+	}
+
+	/**
+	 * Throws away any commands still held without running them and stops
+	 * batching. Does nothing if no batch is open
+	 */
+	public void cancelBatch()
+	{
+		if(batch == null)
+			return;
+
+		batch = null;
+		deletePendingFiles();
+	}
+
+	/**
+	 * Removes and returns everything held in the current batch
+	 * @return Held commands, in the order they were queued. Never null
+	 */
+	private List<QueuedCommand> takeBatch()
+	{
+		List<QueuedCommand> held = new ArrayList<QueuedCommand>();
+		if(batch != null)
+		{
+			held.addAll(batch);
+			batch.clear();
+		}
+		return held;
+	}
+
+	/**
+	 * Ensures the given string is only a single R command
+	 * @param cmd R command to check
+	 */
+	private void checkSingleCmd(String cmd)
+	{
+		// Check if there are multiple commands in the string.
+		// Seriously, that's dangerous for us, could make us hang.
+		Matcher m = singleCmdPatt.matcher(cmd);
+		if(!m.matches())
+			throw new RProcessorException("execute() may only be given one command at a time");
+	}
+
+	/**
+	 * Runs the given command on the R I/O thread without waiting for it to finish.
+	 * Any commands queued in an open batch are sent along with this one. Errors
+	 * and warnings from R cause the returned Future to throw an ExecutionException
+	 * wrapping the RProcessorException.
+	 * @param cmd R command to execute
+	 * @return Future holding the output from R
+	 */
+	public Future<String> executeAsync(String cmd)
+	{
+		final List<QueuedCommand> toSend = takeBatch();
+		toSend.add(new QueuedCommand(cmd, cmd, recordMode, false));
+
+		return submit(new Callable<String>()
+		{
+			@Override
+			public String call()
+			{
+				List<String> output = sendNow(toSend);
+				return output.get(output.size() - 1);
+			}
+		});
+	}
+
+	/**
+	 * Runs the given command on the R I/O thread without waiting for it to finish,
+	 * parsing the result as a vector of doubles
+	 * @param cmd R command to execute
+	 * @return Future holding the doubles that the R command returned
+	 */
+	public Future<List<Double>> executeDoubleArrayAsync(String cmd)
+	{
+		final Future<String> output = executeAsync(cmd);
+
+		return submit(new Callable<List<Double>>()
+		{
+			@Override
+			public List<Double> call() throws Exception
+			{
+				// Already done by the time we run, the I/O thread works in order
+				return parseDoubleArray(output.get());
+			}
+		});
+	}
+
+	/**
+	 * Runs the given command on the R I/O thread without waiting for it to finish,
+	 * parsing the result as a vector of strings
+	 * @param cmd R command to execute
+	 * @return Future holding the strings that the R command returned
+	 */
+	public Future<List<String>> executeStringArrayAsync(String cmd)
+	{
+		final Future<String> output = executeAsync(cmd);
+
+		return submit(new Callable<List<String>>()
+		{
+			@Override
+			public List<String> call() throws Exception
+			{
+				// Already done by the time we run, the I/O thread works in order
+				return parseStringArray(output.get());
+			}
+		});
+	}
+
+	/**
+	 * Hands the given task to the R I/O thread
+	 * @param task Work to be done on the I/O thread
+	 * @return Future for the task's result
+	 */
+	private <T> Future<T> submit(Callable<T> task)
+	{
+		try
+		{
+			return ioThread.submit(task);
+		}
+		catch(RejectedExecutionException ex)
+		{
+			throw new RProcessorDeadException("R process has been closed.");
+		}
+	}
+
+	/**
+	 * Sends the given commands to R through the I/O thread and waits for
+	 * their output, giving up after this processor's timeout
+	 * @param cmds Commands to send
+	 * @return Output from each command, in the same order
+	 */
+	private List<String> send(List<QueuedCommand> cmds)
+	{
+		return send(cmds, timeout);
+	}
+
+	/**
+	 * Sends the given commands to R through the I/O thread and waits for
+	 * their output. The timeout only counts time R spends on these commands,
+	 * not time spent waiting behind others on the I/O thread
+	 * @param cmds Commands to send
+	 * @param seconds Seconds to allow the commands to run, 0 to wait forever
+	 * @return Output from each command, in the same order
+	 */
+	private List<String> send(final List<QueuedCommand> cmds, int seconds)
+	{
+		Future<List<String>> output = submit(new Callable<List<String>>()
+		{
+			@Override
+			public List<String> call()
+			{
+				return sendNow(cmds);
+			}
+		});
+
+		try
+		{
+			if(seconds <= 0)
+				return output.get();
+
+			long limit = TimeUnit.SECONDS.toNanos(seconds);
+			while(true)
+			{
+				long remaining = getRemainingTime(cmds, limit);
+				if(remaining <= 0)
+				{
+					String reason = "R command took longer than " + seconds + " seconds";
+					if(cancel(cmds, reason))
+						return awaitCancelled(output, reason);
+
+					// Finished just as time ran out
+					remaining = TimeUnit.MILLISECONDS.toNanos(START_CHECK_INTERVAL);
+				}
+
+				try
+				{
+					return output.get(remaining, TimeUnit.NANOSECONDS);
+				}
+				catch(TimeoutException ex)
+				{
+					// Either out of time or only now started, check again
+				}
+			}
+		}
+		catch(ExecutionException ex)
+		{
+			throw unwrap(ex);
+		}
+		catch(InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new RProcessorException("Interrupted while waiting for R", ex);
+		}
+	}
+
+	/**
+	 * Determines how much longer the given commands may run
+	 * @param cmds Commands to check
+	 * @param limit Nanoseconds the commands are allowed once sent to R
+	 * @return Nanoseconds left, or the interval to check back after if the
+	 *		commands haven't been sent to R yet
+	 */
+	private long getRemainingTime(List<QueuedCommand> cmds, long limit)
+	{
+		synchronized(cancelSync)
+		{
+			if(running != cmds)
+				return TimeUnit.MILLISECONDS.toNanos(START_CHECK_INTERVAL);
+
+			return limit - (System.nanoTime() - runningSince);
+		}
+	}
+
+	/**
+	 * Waits a limited time for the result of commands which were cancelled.
+	 * R has to be restarted before the I/O thread reports back, which could
+	 * itself hang if something is badly wrong
+	 * @param output Future for the cancelled commands
+	 * @param reason Why the commands were cancelled
+	 * @return Output from the commands, if they managed to finish anyway
+	 */
+	private List<String> awaitCancelled(Future<List<String>> output, String reason) throws InterruptedException
+	{
+		try
+		{
+			return output.get(CANCEL_WAIT, TimeUnit.SECONDS);
+		}
+		catch(TimeoutException ex)
+		{
+			throw new RProcessorException(reason + ", and R did not recover after being stopped", ex);
+		}
+		catch(ExecutionException ex)
+		{
+			throw unwrap(ex);
+		}
+	}
+
+	/**
+	 * Converts a failure on the I/O thread into an exception to throw on the
+	 * waiting thread, as if it happened there
+	 * @param ex Exception from the I/O thread's Future
+	 * @return Exception to throw
+	 */
+	private static RuntimeException unwrap(ExecutionException ex)
+	{
+		if(ex.getCause() instanceof RuntimeException)
+			return (RuntimeException)ex.getCause();
+		else
+			return new RProcessorException("Unable to execute R command", ex.getCause());
+	}
+
+	/**
+	 * Stops whatever command R is currently running. R is killed and restarted
+	 * with its session setup (see restart()), and the caller waiting on the
+	 * command receives an RProcessorException. Does nothing if R is idle.
+	 * May be called from any thread
+	 */
+	public void cancel()
+	{
+		synchronized(cancelSync)
+		{
+			if(running != null)
+				cancel(running, "R command was cancelled");
+		}
+	}
+
+	/**
+	 * Stops the given commands if R is still running them, as with cancel()
+	 * @param cmds Commands to stop
+	 * @param reason Message for the exception the waiting caller receives
+	 * @return true if the commands were stopped, false if R had already
+	 *		moved on from them
+	 */
+	private boolean cancel(List<QueuedCommand> cmds, String reason)
+	{
+		synchronized(cancelSync)
+		{
+			Process proc = rProc;
+			if(running != cmds || proc == null)
+				return false;
+
+			// R has no portable way to interrupt it from here, so the process
+			// is killed. The I/O thread sees it die and brings it back
+			cancelReason = reason;
+			proc.destroy();
+			return true;
+		}
+	}
+
+	/**
+	 * Notes which commands R is working on, starting their timeout
+	 * @param cmds Commands being sent to R, null once R is done with them
+	 */
+	private void setRunning(List<QueuedCommand> cmds)
+	{
+		synchronized(cancelSync)
+		{
+			running = cmds;
+			runningSince = System.nanoTime();
+
+			// Any earlier cancel missed its command, don't let it hit this one
+			if(cmds != null)
+				cancelReason = null;
+		}
+	}
+
+	/**
+	 * Sends the given commands to R in one go, with a marker between each and
+	 * the sentinel after the last, then splits the output back up. Only called
+	 * on the I/O thread
+	 * @param cmds Commands to send
+	 * @return Output from each command, in the same order
+	 */
+	private List<String> sendNow(List<QueuedCommand> cmds)
+	{
+		try
+		{
+			// Ensure the processor is still usable. If R died on its own
+			// it is brought back before we go any further
+			if(closing || procIn == null || procOut == null)
+				throw new RProcessorDeadException("R process has been closed.");
+			if(hasExited(rProc))
+				restart();
+
+			// Start building up our nice command
+			String sentinelCmd = buildCommand(cmds);
+
+			// Indicates which commands caused R to throw an error or warning
+			boolean[] errorOccurred = new boolean[cmds.size()];
+
+			// Output of each command
+			List<String> results = null;
+			try
+			{
+				results = exchangeTimed(cmds, sentinelCmd, errorOccurred);
+			}
+			catch(IOException ex)
+			{
+				// R died part way through, taking every variable with it. Only
+				// commands which rely on none of them may simply be run again.
+				// Only try once, something is badly wrong otherwise
+				if(closing)
+					throw new RProcessorDeadException("R process has been closed.", ex);
+
+				// Killed on purpose, don't run it again
+				String reason = cancelReason;
+				if(reason != null)
+				{
+					cancelReason = null;
+					restart();
+					throw new RProcessorException(reason, ex);
+				}
+
+				restart();
+
+				// Anything else would run against an empty workspace, the caller
+				// has to start its work over from the beginning
+				if(!isRetryable(cmds))
+					throw new RProcessorDeadException("R exited while running commands and was restarted", ex);
+
+				Arrays.fill(errorOccurred, false);
+				results = exchangeTimed(cmds, sentinelCmd, errorOccurred);
+			}
+
+			// Record interaction if needed, stopping where an error will be thrown
+			for(int i = 0; i < cmds.size(); i++)
+			{
+				QueuedCommand queued = cmds.get(i);
+				String result = results.get(i);
+
+				if(queued.mode == RecordMode.CMDS_ONLY || queued.mode == RecordMode.FULL)
+				{
+					interactionRecord.append(queued.record.trim());
+					interactionRecord.append('\n');
+				}
+				if(queued.mode == RecordMode.OUTPUT_ONLY || queued.mode == RecordMode.FULL)
+					interactionRecord.append(result);
+				if(debugOutputMode == RecordMode.OUTPUT_ONLY || debugOutputMode == RecordMode.FULL)
+					System.out.print(result);
+
+				// Throw an error if we encountered an error or warning
+				if(errorOccurred[i] && !queued.ignoreErrors)
+					throw new RProcessorException("R: " + result);
+
+				// Session setup is needed again if R is restarted
+				String trimmed = queued.cmd.trim();
+				if(warmUpPatt.matcher(trimmed).matches() && !warmUpCmds.contains(trimmed))
+					warmUpCmds.add(trimmed);
+			}
+
+			// Return results, the caller is responsible for processing further
+			return results;
+		}
+		catch(IOException ex)
+		{
+			// Unable to read/write to pipes, even after restarting. Most likely the
+			// commands themselves kill R, so bring it back for whatever comes next
+			try
+			{
+				if(!closing)
+					restart();
+			}
+			catch(IOException restartEx)
+			{
+				close();
+			}
+
+			throw new RProcessorException("Unable to read or write to the R instance", ex);
+		}
+		finally
+		{
+			// Binary transfer files are no longer needed once R has read them
+			deletePendingFiles();
+		}
+	}
+
+	/**
+	 * Exchanges the given commands with R as exchange() does, marking them
+	 * as running for their timeout and cancellation. Only called on the I/O thread
+	 * @param cmds Commands being sent
+	 * @param sentinelCmd Commands to send, as built by buildCommand()
+	 * @param errorOccurred Set to true for each command which caused R to
+	 *		throw an error or warning
+	 * @return Output from each command, in the same order
+	 * @throws IOException Thrown if R died while running the commands
+	 */
+	private List<String> exchangeTimed(List<QueuedCommand> cmds, String sentinelCmd, boolean[] errorOccurred) throws IOException
+	{
+		setRunning(cmds);
+		try
+		{
+			return exchange(sentinelCmd, errorOccurred);
+		}
+		finally
+		{
+			setRunning(null);
+		}
+	}
+
+	/**
+	 * Checks if every one of the given commands may be run again on a
+	 * restarted process
+	 * @param cmds Commands to check
+	 * @return true if all the commands are retryable
+	 */
+	private static boolean isRetryable(List<QueuedCommand> cmds)
+	{
+		for(QueuedCommand queued : cmds)
+		{
+			if(!queued.retryable)
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Joins the given commands into a single block to send to R, with a marker
+	 * between each and the sentinel after the last
+	 * @param cmds Commands to join
+	 * @return Text to send to R
+	 */
+	private String buildCommand(List<QueuedCommand> cmds)
+	{
+		StringBuilder sentinelCmd = new StringBuilder();
+		for(int i = 0; i < cmds.size(); i++)
+		{
+			QueuedCommand queued = cmds.get(i);
+			checkSingleCmd(queued.cmd);
+
+			if(i != 0)
+				sentinelCmd.append(this.SEPARATOR_STRING_CMD);
+			sentinelCmd.append(queued.cmd.trim());
+			sentinelCmd.append('\n');
+
+			if(debugOutputMode == RecordMode.CMDS_ONLY || debugOutputMode == RecordMode.FULL)
+				System.out.print("> " + queued.cmd.trim() + '\n');
+		}
+
+		sentinelCmd.append(this.SENTINEL_STRING_CMD);
+		return sentinelCmd.toString();
+	}
+
+	/**
+	 * Sends a block built by buildCommand() to R and splits the output back up.
+	 * Only called on the I/O thread
+	 * @param sentinelCmd Commands to send
+	 * @param errorOccurred Set to true for each command which caused R to
+	 *		throw an error or warning
+	 * @return Output from each command, in the same order
+	 * @throws IOException Thrown if R could not be written to or ended its
+	 *		output before finishing the commands, meaning it died
+	 */
+	private List<String> exchange(String sentinelCmd, boolean[] errorOccurred) throws IOException
+	{
+		List<String> results = new ArrayList<String>(errorOccurred.length);
+
+		// Only one thread may access the R input/output at one time
+		synchronized(processSync)
+		{
+			// Send commands with a sentinel at the end so we know when the output is done
+			byte[] cmdArray = sentinelCmd.getBytes();
+			procIn.write(cmdArray, 0, cmdArray.length);
+			procIn.flush();
+
+			// Get results back, splitting at each marker
+			StringBuilder sb = new StringBuilder();
+			String line = procOut.readLine();
+			while(line != null && !line.equals(this.SENTINEL_STRING_RETURN))
+			{
+				if(line.endsWith(this.SEPARATOR_STRING_RETURN))
+				{
+					// Output that didn't end with a newline is still part of the previous command
+					String rest = line.substring(0, line.length() - this.SEPARATOR_STRING_RETURN.length());
+					if(rest.length() > 0)
+					{
+						sb.append(rest);
+						sb.append('\n');
+					}
+
+					results.add(sb.toString());
+					sb = new StringBuilder();
+				}
+				else
+				{
+					sb.append(line);
+					sb.append('\n');
+
+					if((line.startsWith("Error") || line.startsWith("Warning")) && results.size() < errorOccurred.length)
+						errorOccurred[results.size()] = true;
+				}
+
+				line = procOut.readLine();
+			}
+
+			// Output ending without the sentinel means R is gone
+			if(line == null)
+				throw new EOFException("R exited while running commands");
+
+			// Convert to string
+			results.add(sb.toString());
+		}
+
+		// Guard against R's output getting out of step with ours
+		while(results.size() < errorOccurred.length)
+			results.add("");
+
+		return results;
+	}
+
+	/**
+	 * Deletes temporary files that were waiting on queued commands
+	 */
+	private void deletePendingFiles()
+	{
+		for(File f : pendingFiles)
+			f.delete();
+		pendingFiles.clear();
+	}
+
+	/**
+	 * Convenience function that executes the given command and parses the result as a single double
+	 * value. An exception is thrown if there is not exactly one double in the output.
+	 * @param cmd R command to execute
+	 * @return Double value of the R call
+	 */
+	public Double executeDouble(String cmd)
+	{
+		return parseDouble(execute(cmd));
+	}
+
+	/**
+	 * Convenience function that executes the given command and parses the result as a vector
+	 * of doubles. An exception is thrown if the output does not contain numerical values.
+	 * @param cmd R command to execute
+	 * @return ArrayList of doubles that the R command returned
+	 */
+	public List<Double> executeDoubleArray(String cmd)
+	{
+		return parseDoubleArray(execute(cmd));
+	}
+
+	/**
+	 * Convenience function that executes the given command and parses the result as a string. An
+	 * exception is thrown if there is not exactly one string in the output.
+	 * @param cmd R command to execute
+	 * @return String value of the R call
+	 */
+	public String executeString(String cmd)
+	{
+		return parseString(execute(cmd));
+	}
+
+	/**
+	 * Convenience function that executes the given command and parses the result as a vector of
+	 * strings. An exception is thrown if there are no strings in the output.
+	 * @param cmd R command to execute
+	 * @return ArrayList of strings that the R command returned
+	 */
+	public List<String> executeStringArray(String cmd)
+	{
+		return parseStringArray(execute(cmd));
+	}
+
+	/**
+	 * Convenience function that executes the given command and parses the result as a boolean. An
+	 * exception is thrown if there is not exactly one boolean in the output.
+	 * @param cmd R command to execute
+	 * @return String value of the R call
+	 */
+	public Boolean executeBoolean(String cmd)
+	{
+		return parseBoolean(execute(cmd));
+	}
+
+	/**
+	 * Convenience function that executes the given command and parses the result as a vector of
+	 * booleans. An exception is thrown if there are no booleans in the output.
+	 * @param cmd R command to execute
+	 * @return ArrayList of strings that the R command returned
+	 */
+	public List<Boolean> executeBooleanArray(String cmd)
+	{
+		return parseBooleanArray(execute(cmd));
+	}
+
+	/**
+	 * Runs the given command and saves it into a new, unique variable. The variable name used
+	 * is returned as a string. Only one command may be given, an exception is thrown if this
+	 * isn't true.
+	 * @param cmd R command to execute
+	 * @return R variable name that contains the results of the executed command
+	 */
+	public String executeSave(String cmd)
+	{
+		String varName = getUniqueName();
+		execute(varName + " = " + cmd);
+		return varName;
+	}
+
+	/**
+	 * Takes the given R output and attempts to parse it as a single double value. An exception is
+	 * thrown if there isn't exactly one numerical value in the output.
+	 * @param rOutput R output, as returned by execute(String)
+	 * @return Double value contained in the output
+	 */
+	public Double parseDouble(String rOutput)
+	{
+		ArrayList<Double> arr = parseDoubleArray(rOutput);
+
+		if(arr.size() != 1)
+			throw new RProcessorParseException("The R result was not a single double value");
+
+		return arr.get(0);
+	}
+
+	/**
+	 * Takes the given R output and attempts to parse it as a vector of doubles. An exception is
+	 * thrown if there are no numerical values.
+	 * @param rOutput R output, as returned by execute(String)
+	 * @return ArrayList of Doubles from the output
+	 */
+	public ArrayList<Double> parseDoubleArray(String rOutput)
+	{
+		double[] parsed = parseDoubles(rOutput);
+
+		ArrayList<Double> vals = new ArrayList<Double>(parsed.length);
+		for(double d : parsed)
+			vals.add(d);
+
+		return vals;
+	}
+
+	/**
+	 * Takes the given R output and parses it as a vector of doubles, without
+	 * boxing each value. An exception is thrown if there are no numerical values.
+	 * @param rOutput R output, as returned by execute(String)
+	 * @return Doubles from the output
+	 */
+	public double[] parseDoubles(String rOutput)
+	{
+		return new RVectorParser(rOutput).getDoubles();
+	}
+
+	/**
+	 * Takes the given R output and attempts to parse it as a single string value. An exception
+	 * is thrown if there isn't exactly one string value in the output.
+	 * @param rOutput R output, as returned by execute(String)
+	 * @return String value contained in the output
+	 */
+	public String parseString(String rOutput)
+	{
+		ArrayList<String> arr = parseStringArray(rOutput);
 
 		if(arr.size() != 1)
 			throw new RProcessorParseException("The R result was not a single string value");
@@ -590,20 +1631,18 @@ public final class RProcessor
 	 */
 	public ArrayList<String> parseStringArray(String rOutput)
 	{
-		ArrayList<String> vals = new ArrayList<String>();
-
-		Matcher m = stringPatt.matcher(rOutput);
-
-		while(m.find())
-		{
-			vals.add(m.group(1));
-		}
-
-		// We clearly weren't supposed to parse the output like this, it wasn't what we wanted
-		if(vals.isEmpty())
-			throw new RProcessorParseException("The R result is not a vector of strings");
+		return new ArrayList<String>(Arrays.asList(parseStrings(rOutput)));
+	}
 
-		return vals;
+	/**
+	 * Takes the given R output and parses it as a vector of strings. An exception
+	 * is thrown if the output contains no strings.
+	 * @param rOutput R output, as returned by execute(String)
+	 * @return Strings from the output
+	 */
+	public String[] parseStrings(String rOutput)
+	{
+		return new RVectorParser(rOutput).getStrings();
 	}
 
 	/**
@@ -630,84 +1669,230 @@ public final class RProcessor
 	 */
 	public List<Boolean> parseBooleanArray(String rOutput)
 	{
-		List<Boolean> vals = new ArrayList<Boolean>();
+		boolean[] parsed = new RVectorParser(rOutput).getBooleans();
+
+		List<Boolean> vals = new ArrayList<Boolean>(parsed.length);
+		for(boolean b : parsed)
+			vals.add(b);
+
+		return vals;
+	}
+
+	/**
+	 * Sets the given variable with the value given
+	 * @param val Value to store in the variable
+	 * @return Name of the variable used
+	 */
+	public String setVariable(Object val)
+	{
+		return setVariable(getUniqueName(), val);
+	}
+
+	/**
+	 * Sets the given variable with the value given
+	 * @param name R-conforming variable name
+	 * @param val Value to store in the variable
+	 * @return Name of the variable used
+	 */
+	public String setVariable(String name, Object val)
+	{
+		if(val instanceof Double)
+		{
+			Double dVal = (Double)val;
+			String cmd;
+			if(dVal == Double.POSITIVE_INFINITY)
+				cmd = name + " = Inf";
+			else if(dVal == Double.NEGATIVE_INFINITY)
+				cmd = name + " = -Inf";
+			else
+				cmd = name + " = " + val;
+			queueAssignment(cmd, cmd);
+		}
+		else if(val instanceof Boolean)
+		{
+			String cmd = name + " = " + val.toString().toUpperCase();
+			queueAssignment(cmd, cmd);
+		}
+		else
+		{
+			String cmd = name + " = \"" + val + '"';
+			queueAssignment(cmd, cmd);
+		}
+
+		return name;
+	}
+
+	/**
+	 * Sets a new unique variable with a vector of the values given
+	 * @param vals Array of values to store in the variable
+	 * @return Name of the variable used
+	 */
+	public String setVariable(List<Object> vals)
+	{
+		return setVariable(getUniqueName(), vals);
+	}
+
+	/**
+	 * Sets the given variable with a vector of the values given. Values may be either
+	 * Doubles or Strings (anything unrecognized is assumed to be a string). Vectors
+	 * of at least getBinaryThreshold() values are passed to R through a binary file
+	 * rather than as a literal for R to parse.
+	 * @param name R-conforming variable name
+	 * @param vals Array of values to store in the variable
+	 * @return Name of the variable used
+	 */
+	public String setVariable(String name, List<Object> vals)
+	{
+		// Booleans are always small enough to not bother
+		if(binaryThreshold <= 0 || vals.size() < binaryThreshold || vals.get(0) instanceof Boolean)
+		{
+			String cmd = buildVectorCmd(name, vals);
+			queueAssignment(cmd, cmd);
+			return name;
+		}
+
+		if(vals.get(0) instanceof Double)
+		{
+			double[] dVals = new double[vals.size()];
+			for(int i = 0; i < dVals.length; i++)
+				dVals[i] = (Double)vals.get(i);
+			return setVariable(name, dVals);
+		}
+
+		String fileName = getTransferFileName();
+		File binFile = new File(workingDirectory, fileName);
 
 		try
 		{
-			Matcher m = booleanPatt.matcher(rOutput);
+			writeBinaryStrings(binFile, vals);
+		}
+		catch(IOException ex)
+		{
+			binFile.delete();
+			throw new RProcessorException("Unable to write values for transfer to R", ex);
+		}
 
-			while(m.find())
-			{
-				vals.add(Boolean.valueOf(m.group(1)));
-			}
+		// Only bother building the literal if it's going in the record
+		String literal = isRecordingCmds() ? buildVectorCmd(name, vals) : null;
+		queueBinaryRead(name + " = iconv(readBin('" + fileName + "', what='character', n=" + vals.size() + "), 'UTF-8', 'UTF-8')",
+				binFile, literal);
+
+		return name;
+	}
+
+	/**
+	 * Sets the given variable with a vector of the doubles given. Vectors
+	 * of at least getBinaryThreshold() values are passed to R through a binary
+	 * file rather than as a literal for R to parse.
+	 * @param name R-conforming variable name
+	 * @param vals Array of values to store in the variable
+	 * @return Name of the variable used
+	 */
+	public String setVariable(String name, double[] vals)
+	{
+		if(binaryThreshold <= 0 || vals.length < binaryThreshold)
+		{
+			String cmd = buildVectorCmd(name, boxDoubles(vals));
+			queueAssignment(cmd, cmd);
+			return name;
 		}
-		catch(NumberFormatException ex)
+
+		String fileName = getTransferFileName();
+		File binFile = new File(workingDirectory, fileName);
+
+		try
 		{
-			// Should almost never be hit, as we recognized it with our regex
-			throw new RProcessorParseException("The R result did not contain boolean values");
+			writeBinaryDoubles(binFile, vals);
+		}
+		catch(IOException ex)
+		{
+			binFile.delete();
+			throw new RProcessorException("Unable to write values for transfer to R", ex);
 		}
 
-		// We clearly weren't supposed to parse the output like this, it wasn't what we wanted
-		if(vals.isEmpty())
-			throw new RProcessorParseException("The R result is not a vector of booleans");
+		// Only bother building the literal if it's going in the record
+		String literal = isRecordingCmds() ? buildVectorCmd(name, boxDoubles(vals)) : null;
+		queueBinaryRead(name + " = readBin('" + fileName + "', what='double', n=" + vals.length + ", size=8, endian='little')",
+				binFile, literal);
 
-		return vals;
+		return name;
 	}
 
 	/**
-	 * Sets the given variable with the value given
-	 * @param val Value to store in the variable
+	 * Sets the given variable to a factor built from dictionary-encoded strings.
+	 * Only the distinct strings and an integer code per value are sent to R,
+	 * rather than the full string for every value.
+	 * @param name R-conforming variable name
+	 * @param levels Distinct strings, indexed by code
+	 * @param codes Index into levels for each value
 	 * @return Name of the variable used
 	 */
-	public String setVariable(Object val)
+	public String setFactor(String name, String[] levels, int[] codes)
 	{
-		return setVariable(getUniqueName(), val);
+		String levelsVar = setVariable(new ArrayList<Object>(Arrays.asList(levels)));
+
+		double[] dCodes = new double[codes.length];
+		for(int i = 0; i < codes.length; i++)
+			dCodes[i] = codes[i];
+		String codesVar = setVariable(getUniqueName(), dCodes);
+
+		// factor() sorts the levels and drops any unused, as if the
+		// strings themselves had been given
+		queue(name + " = factor(" + levelsVar + "[" + codesVar + " + 1])");
+		queue("rm(" + levelsVar + ", " + codesVar + ")");
+
+		return name;
 	}
 
 	/**
-	 * Sets the given variable with the value given
-	 * @param name R-conforming variable name
-	 * @param val Value to store in the variable
-	 * @return Name of the variable used
+	 * Queues the command which reads a binary transfer file into R. The file is
+	 * removed once R has read it. The literal version of the assignment is what
+	 * gets recorded, the file won't be around for anyone trying to rerun the record
+	 * @param cmd R command which reads the file
+	 * @param binFile Transfer file
+	 * @param literal Command assigning the values as a literal, may be null
+	 *		if commands are not being recorded
 	 */
-	public String setVariable(String name, Object val)
+	private void queueBinaryRead(String cmd, File binFile, String literal)
 	{
-		if(val instanceof Double)
-		{
-			Double dVal = (Double)val;
-			if(dVal == Double.POSITIVE_INFINITY)
-				execute(name + " = Inf");
-			else if(dVal == Double.NEGATIVE_INFINITY)
-				execute(name + " = -Inf");
-			else
-				execute(name + " = " + val);
-		}
-		else if(val instanceof Boolean)
-			execute(name + " = " + val.toString().toUpperCase());
+		pendingFiles.add(binFile);
+
+		if(literal != null)
+			queueAssignment(cmd, literal);
 		else
-			execute(name + " = \"" + val + '"');
+			queueAssignment(cmd, cmd);
+	}
 
-		return name;
+	/**
+	 * Checks if commands are currently being placed in the record
+	 * @return true if the record mode includes commands
+	 */
+	private boolean isRecordingCmds()
+	{
+		return recordMode == RecordMode.CMDS_ONLY || recordMode == RecordMode.FULL;
 	}
 
 	/**
-	 * Sets a new unique variable with a vector of the values given
-	 * @param vals Array of values to store in the variable
-	 * @return Name of the variable used
+	 * Boxes the given doubles into a list
+	 * @param vals Values to box
+	 * @return List of Doubles
 	 */
-	public String setVariable(List<Object> vals)
+	private static List<Object> boxDoubles(double[] vals)
 	{
-		return setVariable(getUniqueName(), vals);
+		List<Object> boxed = new ArrayList<Object>(vals.length);
+		for(double d : vals)
+			boxed.add(d);
+		return boxed;
 	}
 
 	/**
-	 * Sets the given variable with a vector of the values given. Values may be either
-	 * Doubles or Strings (anything unrecognized is assumed to be a string).
+	 * Builds the R command which sets the given variable to a vector literal
+	 * of the values given
 	 * @param name R-conforming variable name
 	 * @param vals Array of values to store in the variable
-	 * @return Name of the variable used
+	 * @return R command to perform the assignment
 	 */
-	public String setVariable(String name, List<Object> vals)
+	private String buildVectorCmd(String name, List<Object> vals)
 	{
 		// Builds an R command to set the given variable name with the values in the array
 		StringBuilder cmd = new StringBuilder();
@@ -757,10 +1942,280 @@ public final class RProcessor
 		// End vector
 		cmd.append(")\n");
 
-		// Run R command
-		execute(cmd.toString());
+		return cmd.toString();
+	}
 
-		return name;
+	/**
+	 * Runs the given command and returns the resulting vector, as Doubles if R
+	 * considers it numeric and as Strings otherwise. Results of at least
+	 * getBinaryThreshold() values are pulled back through a binary file rather
+	 * than parsed out of R's printed output. Only the command itself is recorded,
+	 * so the record remains runnable as-is. An exception is thrown if the output
+	 * contains neither numbers nor strings.
+	 * @param cmd R command to execute
+	 * @return List of Doubles or Strings that the R command returned
+	 */
+	public List<Object> executeVector(String cmd)
+	{
+		// The record needs R's printed output, so we have to go that route anyway
+		if(binaryThreshold <= 0 || recordMode == RecordMode.OUTPUT_ONLY || recordMode == RecordMode.FULL)
+			return parseVector(execute(cmd), false, false);
+
+		// Ensure we're only given one command, we're going to wrap it
+		checkSingleCmd(cmd);
+
+		String trimmedCmd = cmd.trim();
+		if(trimmedCmd.endsWith(";"))
+			trimmedCmd = trimmedCmd.substring(0, trimmedCmd.length() - 1);
+
+		RecordMode oldMode = recordMode;
+		String varName = getUniqueName();
+		try
+		{
+			// Run the command just once, finding out how big it is and what type.
+			// Only the command itself goes into the record
+			List<Double> info = parseDoubleArray(execute("c(length(" + varName + " <- (" + trimmedCmd + ")), is.numeric("
+					+ varName + "), is.character(" + varName + ") || is.factor(" + varName + "))", trimmedCmd, false));
+			recordMode = RecordMode.DISABLED;
+
+			int len = info.get(0).intValue();
+			boolean isNumeric = info.get(1) != 0;
+			boolean isString = info.get(2) != 0;
+
+			if(len >= binaryThreshold && (isNumeric || isString))
+				return fetchBinaryVector(varName, isNumeric);
+			else if(isString)
+				return parseVector(execute("as.character(" + varName + ")"), false, true);
+			else
+				return parseVector(execute(varName), isNumeric, false);
+		}
+		finally
+		{
+			recordMode = oldMode;
+
+			// The variable won't exist if the command failed. R complaining
+			// about that must not hide whatever the real error was
+			String cleanup = "rm(" + varName + ")";
+			execute(new QueuedCommand(cleanup, cleanup, RecordMode.DISABLED, true));
+		}
+	}
+
+	/**
+	 * Parses the given R output as a vector of doubles or strings
+	 * @param rOutput R output, as returned by execute(String)
+	 * @param isNumeric true if R reported the vector as numeric
+	 * @param isString true if R reported the vector as character
+	 * @return List of Doubles or Strings from the output
+	 */
+	private List<Object> parseVector(String rOutput, boolean isNumeric, boolean isString)
+	{
+		RVectorParser parser = new RVectorParser(rOutput);
+
+		// Go with whatever the output looks like if R didn't tell us
+		if(!isNumeric && !isString)
+		{
+			RVectorParser.VectorType type = parser.getType();
+			if(type == RVectorParser.VectorType.STRING)
+				isString = true;
+			else if(type == RVectorParser.VectorType.NUMERIC)
+				isNumeric = true;
+			else
+				throw new RProcessorParseException("The R result is not a vector of doubles or strings");
+		}
+
+		if(isNumeric)
+		{
+			double[] parsed = parser.getDoubles();
+			List<Object> vals = new ArrayList<Object>(parsed.length);
+			for(double d : parsed)
+				vals.add(d);
+			return vals;
+		}
+		else
+			return new ArrayList<Object>(Arrays.asList(parser.getStrings()));
+	}
+
+	/**
+	 * Has R write the given vector to a binary file and reads it back in
+	 * @param varName R variable holding a numeric or character vector
+	 * @param isNumeric true if the vector should be read as doubles, false for strings
+	 * @return List of Doubles or Strings in the vector
+	 */
+	private List<Object> fetchBinaryVector(String varName, boolean isNumeric)
+	{
+		String fileName = getTransferFileName();
+		File binFile = new File(workingDirectory, fileName);
+
+		try
+		{
+			if(isNumeric)
+			{
+				execute("writeBin(as.double(" + varName + "), '" + fileName + "', size=8, endian='little')");
+				return readBinaryDoubles(binFile);
+			}
+			else
+			{
+				execute("writeBin(enc2utf8(as.character(" + varName + ")), '" + fileName + "')");
+				return readBinaryStrings(binFile);
+			}
+		}
+		catch(IOException ex)
+		{
+			throw new RProcessorException("Unable to read values transferred from R", ex);
+		}
+		finally
+		{
+			binFile.delete();
+		}
+	}
+
+	/**
+	 * Returns a name for a binary transfer file that no other processor in
+	 * this session will use, even should two share a working directory
+	 * @return File name, relative to the working directory
+	 */
+	private static String getTransferFileName()
+	{
+		return "marlaTransfer" + transferFileCounter.incrementAndGet() + ".bin";
+	}
+
+	/**
+	 * Writes the given Doubles to the file as little-endian 8 byte values,
+	 * the format R's readBin() expects with size=8, endian='little'
+	 * @param binFile File to write to
+	 * @param vals Doubles to write
+	 */
+	private static void writeBinaryDoubles(File binFile, double[] vals) throws IOException
+	{
+		ByteBuffer buf = ByteBuffer.allocate(vals.length * 8);
+		buf.order(ByteOrder.LITTLE_ENDIAN);
+		buf.asDoubleBuffer().put(vals);
+
+		FileOutputStream os = new FileOutputStream(binFile);
+		try
+		{
+			FileChannel channel = os.getChannel();
+			while(buf.hasRemaining())
+				channel.write(buf);
+		}
+		finally
+		{
+			os.close();
+		}
+	}
+
+	/**
+	 * Writes the given values to the file as null-terminated UTF-8 strings,
+	 * the format R's readBin() expects with what='character'
+	 * @param binFile File to write to
+	 * @param vals Values to write, converted to strings as needed
+	 */
+	private static void writeBinaryStrings(File binFile, List<Object> vals) throws IOException
+	{
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(binFile));
+		try
+		{
+			for(Object val : vals)
+			{
+				os.write(String.valueOf(val).getBytes("UTF-8"));
+				os.write(0);
+			}
+		}
+		finally
+		{
+			os.close();
+		}
+	}
+
+	/**
+	 * Reads a file of little-endian 8 byte doubles, as written by R's writeBin()
+	 * @param binFile File to read
+	 * @return List of Doubles in the file
+	 */
+	private static List<Object> readBinaryDoubles(File binFile) throws IOException
+	{
+		ByteBuffer buf = readBinaryFile(binFile);
+		buf.order(ByteOrder.LITTLE_ENDIAN);
+
+		List<Object> vals = new ArrayList<Object>(buf.remaining() / 8);
+		while(buf.remaining() >= 8)
+			vals.add(buf.getDouble());
+
+		return vals;
+	}
+
+	/**
+	 * Reads a file of null-terminated UTF-8 strings, as written by R's writeBin()
+	 * @param binFile File to read
+	 * @return List of Strings in the file
+	 */
+	private static List<Object> readBinaryStrings(File binFile) throws IOException
+	{
+		ByteBuffer buf = readBinaryFile(binFile);
+		byte[] bytes = buf.array();
+		int end = buf.limit();
+
+		List<Object> vals = new ArrayList<Object>();
+		int start = 0;
+		for(int i = 0; i < end; i++)
+		{
+			if(bytes[i] == 0)
+			{
+				vals.add(new String(bytes, start, i - start, "UTF-8"));
+				start = i + 1;
+			}
+		}
+
+		return vals;
+	}
+
+	/**
+	 * Reads the entire given file into a buffer, ready for reading
+	 * @param binFile File to read
+	 * @return Buffer holding the contents of the file
+	 */
+	private static ByteBuffer readBinaryFile(File binFile) throws IOException
+	{
+		FileInputStream is = new FileInputStream(binFile);
+		try
+		{
+			FileChannel channel = is.getChannel();
+			ByteBuffer buf = ByteBuffer.allocate((int)channel.size());
+			while(buf.hasRemaining() && channel.read(buf) >= 0)
+			{
+				// Keep reading until full
+			}
+			buf.flip();
+			return buf;
+		}
+		finally
+		{
+			is.close();
+		}
+	}
+
+	/**
+	 * Sets the number of values a vector must have before it is passed between
+	 * Java and R through a binary file rather than as text. Values of zero or
+	 * less disable binary transfers entirely
+	 * @param newThreshold Minimum vector length for binary transfer
+	 * @return Previously set threshold
+	 */
+	public static int setBinaryThreshold(int newThreshold)
+	{
+		int oldThreshold = binaryThreshold;
+		binaryThreshold = newThreshold;
+		return oldThreshold;
+	}
+
+	/**
+	 * Gets the number of values a vector must have before it is passed between
+	 * Java and R through a binary file rather than as text
+	 * @return Minimum vector length for binary transfer
+	 */
+	public static int getBinaryThreshold()
+	{
+		return binaryThreshold;
 	}
 
 	/**
@@ -810,13 +2265,20 @@ public final class RProcessor
 	}
 	
 	/**
-	 * Loads the given library into R. If it is not installed, attempts to 
-	 * automatically install it
+	 * Loads the given library into R. If it is not installed, attempts to
+	 * automatically install it from the package repository. Libraries which
+	 * fail are remembered, so later calls this session return false immediately
 	 * @param lib Name of the library to load
 	 * @return true if load succeeds, false otherwise
 	 */
 	public boolean loadLibrary(String lib)
 	{
+		synchronized(failedLibraries)
+		{
+			if(failedLibraries.contains(lib))
+				return false;
+		}
+
 		Boolean loaded = false;
 		try
 		{
@@ -837,8 +2299,8 @@ public final class RProcessor
 		{
 			try
 			{
-				execute("install.packages('" + lib + "', repos='http://cran.r-project.org')");
-				loaded = executeBoolean("library('" + lib + "', logical.return=T)");
+				if(installLibrary(lib))
+					loaded = executeBoolean("library('" + lib + "', logical.return=T)");
 			}
 			catch(RProcessorException ex)
 			{
@@ -846,9 +2308,165 @@ public final class RProcessor
 			}
 		}
 
+		if(!loaded)
+		{
+			synchronized(failedLibraries)
+			{
+				failedLibraries.add(lib);
+			}
+		}
+
 		return loaded;
 	}
 
+	/**
+	 * Loads the given library only if it is already installed. Nothing is
+	 * installed and failures are not remembered, so this is safe to use before
+	 * the user could have configured a package repository
+	 * @param lib Name of the library to load
+	 * @return true if the library was loaded, false if it isn't installed or failed
+	 */
+	boolean loadInstalledLibrary(String lib)
+	{
+		if(!executeBoolean("'" + lib + "' %in% .packages(all.available=TRUE)"))
+			return false;
+
+		return executeBoolean("library('" + lib + "', logical.return=T)");
+	}
+
+	/**
+	 * Runs the given command without any timeout, for work that legitimately
+	 * takes a long time. Any commands queued in an open batch are sent along
+	 * with this one
+	 * @param cmd R command to execute
+	 * @return String output from R
+	 */
+	private String executeUntimed(String cmd)
+	{
+		List<QueuedCommand> toSend = takeBatch();
+		toSend.add(new QueuedCommand(cmd, cmd, recordMode, false));
+
+		List<String> output = send(toSend, 0);
+		return output.get(output.size() - 1);
+	}
+
+	/**
+	 * Installs the given library from the package repository. A local
+	 * directory may either be a repository (with src/contrib/PACKAGES, for
+	 * example) or simply hold package files named as R builds them
+	 * (lib_version.tar.gz, .zip, or .tgz)
+	 * @param lib Name of the library to install
+	 * @return true if an install was attempted, false if there is nowhere to
+	 *		install it from
+	 */
+	private boolean installLibrary(String lib)
+	{
+		String repo = packageRepository;
+		if(repo == null)
+			return false;
+
+		File repoDir = new File(repo);
+		if(!repoDir.isDirectory())
+		{
+			// Remote repository
+			executeUntimed("install.packages('" + lib + "', repos='" + escapePath(repo) + "')");
+			return true;
+		}
+
+		// Package file sitting in the directory?
+		File pkgFile = findPackageFile(repoDir, lib);
+		if(pkgFile != null)
+		{
+			String type = "source";
+			if(pkgFile.getName().endsWith(".zip"))
+				type = "win.binary";
+			else if(pkgFile.getName().endsWith(".tgz"))
+				type = "mac.binary";
+
+			executeUntimed("install.packages('" + escapePath(pkgFile.getAbsolutePath()) + "', repos=NULL, type='" + type + "')");
+			return true;
+		}
+
+		// Otherwise treat it as a local copy of a repository
+		String path = escapePath(repoDir.getAbsolutePath());
+		if(!path.startsWith("/"))
+			path = "/" + path;
+		executeUntimed("install.packages('" + lib + "', repos='file://" + path + "')");
+		return true;
+	}
+
+	/**
+	 * Finds the newest package file for the given library in a directory
+	 * @param dir Directory to search
+	 * @param lib Name of the library
+	 * @return Package file, null if there isn't one
+	 */
+	private static File findPackageFile(File dir, String lib)
+	{
+		File[] files = dir.listFiles();
+		if(files == null)
+			return null;
+
+		Arrays.sort(files);
+
+		File found = null;
+		for(File f : files)
+		{
+			String name = f.getName();
+			if(name.startsWith(lib + "_") && (name.endsWith(".tar.gz") || name.endsWith(".zip") || name.endsWith(".tgz")))
+				found = f;
+		}
+
+		return found;
+	}
+
+	/**
+	 * Prepares a path or URL for use inside a single-quoted R string
+	 * @param path Path to prepare
+	 * @return Path with forward slashes and quotes escaped
+	 */
+	private static String escapePath(String path)
+	{
+		return path.replace('\\', '/').replace("'", "\\'");
+	}
+
+	/**
+	 * Sets where missing libraries are installed from. Libraries which failed
+	 * to load before are attempted again
+	 * @param newRepository URL of a CRAN-style repository, or path to a local
+	 *		directory holding a repository or package files. null or empty to
+	 *		never install libraries
+	 * @return The previously set repository, empty if none was
+	 */
+	public static String setPackageRepository(String newRepository)
+	{
+		String oldRepository = getPackageRepository();
+
+		if(newRepository == null || newRepository.isEmpty())
+			packageRepository = null;
+		else
+			packageRepository = newRepository;
+
+		synchronized(failedLibraries)
+		{
+			failedLibraries.clear();
+		}
+
+		return oldRepository;
+	}
+
+	/**
+	 * Returns where missing libraries are installed from
+	 * @return Repository URL or local directory, empty if libraries are never installed
+	 */
+	public static String getPackageRepository()
+	{
+		if(packageRepository != null)
+			return packageRepository;
+		else
+			return "";
+	}
+
 	/**
 	 * Sets the recording mode for the processor
 	 * @param mode RecordMode to place the processor in.
@@ -870,6 +2488,53 @@ public final class RProcessor
 		return recordMode;
 	}
 
+	/**
+	 * Sets how long this processor allows a single call to R to run before
+	 * cancelling it. Callers may tighten or loosen it around a particular call
+	 * @param newTimeout Seconds to allow, 0 to wait forever
+	 * @return The previously set timeout
+	 */
+	public int setTimeout(int newTimeout)
+	{
+		int oldTimeout = timeout;
+		timeout = newTimeout;
+		return oldTimeout;
+	}
+
+	/**
+	 * Returns how long this processor allows a single call to R to run
+	 * @return Seconds allowed, 0 if it waits forever
+	 */
+	public int getTimeout()
+	{
+		return timeout;
+	}
+
+	/**
+	 * Sets how long newly started processors allow a single call to R to run
+	 * before cancelling it
+	 * @param newTimeout Seconds to allow, 0 to wait forever
+	 * @return The previously set default
+	 */
+	public static int setDefaultTimeout(int newTimeout)
+	{
+		if(newTimeout < 0)
+			throw new ConfigurationException("R command timeout may not be negative", ConfigType.RTimeout);
+
+		int oldTimeout = defaultTimeout;
+		defaultTimeout = newTimeout;
+		return oldTimeout;
+	}
+
+	/**
+	 * Returns how long newly started processors allow a single call to R to run
+	 * @return Seconds allowed, 0 if they wait forever
+	 */
+	public static int getDefaultTimeout()
+	{
+		return defaultTimeout;
+	}
+
 	/**
 	 * Sets how much the processor should output to the console. Useful debugging operations
 	 * @param mode RecordMode to place the processor in.
@@ -0,0 +1,364 @@
+/*
+ * The maRla Project - Graphical problem solver for statistical calculations.
+ * Copyright © 2011 Cedarville University
+ * http://marla.googlecode.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package marla.ide.r;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import marla.ide.resource.Configuration.ConfigType;
+import marla.ide.resource.ConfigurationException;
+
+/**
+ * Holds the set of R processes maRla works through. Callers that need a process
+ * to themselves for a series of commands (an operation computation, for example)
+ * lease() one and release() it when done. Processes are started lazily, so
+ * there are never more R instances running than have been needed at once.
+ * The primary process returned by RProcessor.getInstance() is kept apart from
+ * the leased ones, since its callers use it without leasing.
+ * @author Ryan Morehart
+ */
+public final class RProcessorPool
+{
+	/**
+	 * Maximum number of R processes the pool will lease out at one time, not
+	 * counting the primary
+	 */
+	private static int maxSize = 1;
+	/**
+	 * Single instance of the pool that we allow
+	 */
+	private static RProcessorPool instance = null;
+	/**
+	 * Every leasable process the pool has started and not yet thrown away
+	 */
+	private final List<RProcessor> processors = new ArrayList<RProcessor>();
+	/**
+	 * Processes which are not currently leased out
+	 */
+	private final List<RProcessor> idle = new ArrayList<RProcessor>();
+	/**
+	 * Current leases, by the thread which holds them
+	 */
+	private final Map<Thread, Lease> leases = new HashMap<Thread, Lease>();
+	/**
+	 * Process handed out by RProcessor.getInstance() for callers which
+	 * don't lease. Never leased, as those callers would share it unknowingly
+	 */
+	private RProcessor primary = null;
+	/**
+	 * Number of processes currently being started outside of the pool lock
+	 */
+	private int starting = 0;
+
+	/**
+	 * Tracks the process a thread holds and how many times it has leased
+	 * it, allowing nested leases from the same thread to share a process
+	 */
+	private static class Lease
+	{
+		/**
+		 * Process leased
+		 */
+		private final RProcessor proc;
+		/**
+		 * Number of unreleased lease() calls on the process
+		 */
+		private int depth = 1;
+
+		/**
+		 * Creates a new lease on the given process
+		 * @param proc Process being leased
+		 */
+		private Lease(RProcessor proc)
+		{
+			this.proc = proc;
+		}
+	}
+
+	/**
+	 * Pools may only be created through getInstance()
+	 */
+	private RProcessorPool()
+	{
+	}
+
+	/**
+	 * Gets the current pool, creating it if needed
+	 * @return Pool of R processes
+	 */
+	public static synchronized RProcessorPool getInstance()
+	{
+		if(instance == null)
+			instance = new RProcessorPool();
+
+		return instance;
+	}
+
+	/**
+	 * Sets the maximum number of R processes that may be leased at once. The
+	 * primary process is not counted. If the pool currently has more than
+	 * this, idle processes are closed to bring it down to size and leased ones
+	 * are closed as they are released
+	 * @param newSize Maximum number of processes, must be at least one
+	 * @return Previously set maximum
+	 */
+	public static int setMaxSize(int newSize)
+	{
+		if(newSize < 1)
+			throw new ConfigurationException("R process pool must allow at least one process", ConfigType.RPoolSize);
+
+		int oldSize = maxSize;
+		maxSize = newSize;
+
+		if(newSize < oldSize)
+			getInstance().trim();
+
+		return oldSize;
+	}
+
+	/**
+	 * Gets the maximum number of R processes that may be leased at once
+	 * @return Current maximum pool size
+	 */
+	public static int getMaxSize()
+	{
+		return maxSize;
+	}
+
+	/**
+	 * Returns the process used by callers that do not lease their own. The
+	 * process is started if needed and is never handed out by lease(). A process which dies on its own restarts
+	 * itself, but one which has been closed is returned as-is; use
+	 * RProcessor.restartInstance() to bring it back
+	 * @return Shared primary R process
+	 */
+	synchronized RProcessor getPrimary()
+	{
+		if(primary == null)
+			primary = new RProcessor(RProcessor.getRLocation());
+
+		return primary;
+	}
+
+	/**
+	 * Starts the primary process if it isn't already, then leases a process
+	 * and loads whichever of the given libraries are already installed into it.
+	 * Intended to be run in the background at startup so neither loading data
+	 * nor the first operation pays for starting R. Missing libraries are left
+	 * for the operation which needs them to install, by which time a package
+	 * repository may be reachable
+	 * @param libraries Names of the libraries to load
+	 */
+	public void warmUp(List<String> libraries)
+	{
+		getPrimary();
+
+		// Operations compute on leased processes, so that's where the libraries go
+		RProcessor proc = lease();
+		try
+		{
+			for(String lib : libraries)
+			{
+				try
+				{
+					proc.loadInstalledLibrary(lib);
+				}
+				catch(RProcessorException ex)
+				{
+					// Left for the operation to report
+				}
+			}
+		}
+		finally
+		{
+			release(proc);
+		}
+	}
+
+	/**
+	 * Checks if the primary process has been started
+	 * @return true if there is a primary process, false otherwise
+	 */
+	synchronized boolean hasPrimary()
+	{
+		return primary != null;
+	}
+
+	/**
+	 * Returns the number of R processes currently started by the pool,
+	 * whether leased, idle, or the primary
+	 * @return Number of R processes in pool
+	 */
+	public synchronized int getProcessorCount()
+	{
+		if(primary != null)
+			return processors.size() + 1;
+		else
+			return processors.size();
+	}
+
+	/**
+	 * Leases an R process to the calling thread for exclusive use, starting a
+	 * new one if the pool has room or waiting for one to be released if
+	 * it doesn't. A thread which already holds a lease receives the same
+	 * process again. Every call must be matched with a call to release()
+	 * @return R process for the caller to work through
+	 */
+	public RProcessor lease()
+	{
+		Thread curr = Thread.currentThread();
+
+		synchronized(this)
+		{
+			// Nested leases share the process
+			Lease held = leases.get(curr);
+			if(held != null)
+			{
+				held.depth++;
+				return held.proc;
+			}
+
+			while(true)
+			{
+				// Hand out an idle one, throwing away any that died while waiting
+				while(!idle.isEmpty())
+				{
+					RProcessor proc = idle.remove(idle.size() - 1);
+					if(proc.isRunning())
+					{
+						leases.put(curr, new Lease(proc));
+						return proc;
+					}
+					else
+						discard(proc);
+				}
+
+				// Room for another?
+				if(processors.size() + starting < maxSize)
+				{
+					starting++;
+					break;
+				}
+
+				try
+				{
+					wait();
+				}
+				catch(InterruptedException ex)
+				{
+					curr.interrupt();
+					throw new RProcessorException("Interrupted while waiting for an R process", ex);
+				}
+			}
+		}
+
+		// Start up a new process. Done outside the lock so that other threads
+		// may continue to lease and release while R loads
+		RProcessor proc = null;
+		try
+		{
+			proc = new RProcessor(RProcessor.getRLocation());
+		}
+		finally
+		{
+			synchronized(this)
+			{
+				starting--;
+				if(proc != null)
+				{
+					processors.add(proc);
+					leases.put(curr, new Lease(proc));
+				}
+				notifyAll();
+			}
+		}
+
+		return proc;
+	}
+
+	/**
+	 * Returns a process leased with lease() to the pool. Once released the
+	 * caller must not use the process any further
+	 * @param proc Process previously leased by this thread
+	 */
+	public synchronized void release(RProcessor proc)
+	{
+		Thread curr = Thread.currentThread();
+		Lease held = leases.get(curr);
+		if(held == null || held.proc != proc)
+			throw new RProcessorException("R process released by a thread which did not lease it");
+
+		// Only truly give it back once the outermost lease ends
+		held.depth--;
+		if(held.depth > 0)
+			return;
+
+		leases.remove(curr);
+
+		// Processes left over from a restart, ones that died, and extras beyond
+		// a newly shrunk pool are thrown away rather than reused
+		if(!processors.contains(proc) || !proc.isRunning() || processors.size() > maxSize)
+			discard(proc);
+		else
+			idle.add(proc);
+
+		notifyAll();
+	}
+
+	/**
+	 * Closes every process in the pool. Processes are started again as needed.
+	 * Any process currently leased is closed as well, so its holder will receive
+	 * RProcessorDeadException on further use
+	 */
+	public synchronized void restart()
+	{
+		for(RProcessor proc : processors)
+			proc.close();
+		if(primary != null)
+			primary.close();
+
+		processors.clear();
+		idle.clear();
+		primary = null;
+
+		notifyAll();
+	}
+
+	/**
+	 * Closes idle processes until the pool is no larger than the maximum size
+	 */
+	private synchronized void trim()
+	{
+		for(int i = idle.size() - 1; i >= 0 && processors.size() > maxSize; i--)
+			discard(idle.get(i));
+	}
+
+	/**
+	 * Removes the given process from the pool entirely and closes it
+	 * @param proc Process to throw away
+	 */
+	private void discard(RProcessor proc)
+	{
+		processors.remove(proc);
+		idle.remove(proc);
+		proc.close();
+	}
+}
@@ -0,0 +1,309 @@
+/*
+ * The maRla Project - Graphical problem solver for statistical calculations.
+ * Copyright © 2011 Cedarville University
+ * http://marla.googlecode.com
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package marla.ide.r;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits vector output printed by R into its values in a single pass, collecting
+ * numbers, quoted strings, and booleans as it goes. Index markers such as [1] and
+ * any other bare words are skipped. Numbers and booleans inside quoted strings are
+ * part of the string, not values of their own.
+ * @author Ryan Morehart
+ */
+final class RVectorParser
+{
+	/**
+	 * Types of vector R may have printed
+	 */
+	enum VectorType
+	{
+		NUMERIC, STRING, BOOLEAN, NONE
+	};
+
+	/**
+	 * Numbers found, only the first doubleCount are valid
+	 */
+	private double[] doubles = new double[16];
+	/**
+	 * Number of values in doubles
+	 */
+	private int doubleCount = 0;
+	/**
+	 * Quoted strings found, with escapes resolved
+	 */
+	private final List<String> strings = new ArrayList<String>();
+	/**
+	 * Booleans found, only the first booleanCount are valid
+	 */
+	private boolean[] booleans = new boolean[16];
+	/**
+	 * Number of values in booleans
+	 */
+	private int booleanCount = 0;
+
+	/**
+	 * Parses the given R output
+	 * @param rOutput R output, as returned by RProcessor.execute(String)
+	 */
+	RVectorParser(String rOutput)
+	{
+		int len = rOutput.length();
+		int i = 0;
+		while(i < len)
+		{
+			char c = rOutput.charAt(i);
+			if(Character.isWhitespace(c))
+			{
+				i++;
+			}
+			else if(c == '"')
+			{
+				i = readString(rOutput, i + 1);
+			}
+			else
+			{
+				// Bare token, runs until whitespace or the start of a string
+				int start = i;
+				while(i < len && !Character.isWhitespace(rOutput.charAt(i)) && rOutput.charAt(i) != '"')
+					i++;
+
+				readToken(rOutput, start, i);
+			}
+		}
+	}
+
+	/**
+	 * Reads a quoted string, adding it to the found strings if it is terminated
+	 * before the end of the line
+	 * @param rOutput R output being parsed
+	 * @param start Index just after the opening quote
+	 * @return Index to continue parsing from
+	 */
+	private int readString(String rOutput, int start)
+	{
+		StringBuilder sb = new StringBuilder();
+		int len = rOutput.length();
+		int i = start;
+		while(i < len)
+		{
+			char c = rOutput.charAt(i);
+			if(c == '"')
+			{
+				strings.add(sb.toString());
+				return i + 1;
+			}
+			else if(c == '\n')
+			{
+				// Strings never span lines in R output, so this wasn't one
+				return i;
+			}
+			else if(c == '\\' && i + 1 < len)
+			{
+				char escaped = rOutput.charAt(i + 1);
+				if(escaped == 'n')
+					sb.append('\n');
+				else if(escaped == 't')
+					sb.append('\t');
+				else if(escaped == 'r')
+					sb.append('\r');
+				else if(escaped == '"' || escaped == '\\')
+					sb.append(escaped);
+				else
+				{
+					sb.append(c);
+					sb.append(escaped);
+				}
+				i += 2;
+			}
+			else
+			{
+				sb.append(c);
+				i++;
+			}
+		}
+
+		return i;
+	}
+
+	/**
+	 * Classifies a bare token, saving it if it is a number or boolean
+	 * @param rOutput R output being parsed
+	 * @param start Index of the first character of the token
+	 * @param end Index just past the last character of the token
+	 */
+	private void readToken(String rOutput, int start, int end)
+	{
+		String token = rOutput.substring(start, end);
+		if(token.equals("TRUE"))
+			addBoolean(true);
+		else if(token.equals("FALSE"))
+			addBoolean(false);
+		else if(token.equals("Inf"))
+			addDouble(Double.POSITIVE_INFINITY);
+		else if(token.equals("-Inf"))
+			addDouble(Double.NEGATIVE_INFINITY);
+		else if(token.equals("NaN") || token.equals("NA"))
+			addDouble(Double.NaN);
+		else if(isNumber(rOutput, start, end))
+			addDouble(Double.parseDouble(token));
+	}
+
+	/**
+	 * Checks if the given section of output is a number as R prints them,
+	 * such as 5, -2.25, or 1.5e-07
+	 * @param rOutput R output being parsed
+	 * @param start Index of the first character to check
+	 * @param end Index just past the last character to check
+	 * @return true if the section is a number, false otherwise
+	 */
+	private static boolean isNumber(String rOutput, int start, int end)
+	{
+		int i = start;
+		if(i < end && rOutput.charAt(i) == '-')
+			i++;
+
+		// Whole part
+		int digitsStart = i;
+		while(i < end && Character.isDigit(rOutput.charAt(i)))
+			i++;
+		if(i == digitsStart)
+			return false;
+
+		// Fraction
+		if(i < end && rOutput.charAt(i) == '.')
+		{
+			i++;
+			digitsStart = i;
+			while(i < end && Character.isDigit(rOutput.charAt(i)))
+				i++;
+			if(i == digitsStart)
+				return false;
+		}
+
+		// Exponent
+		if(i < end && rOutput.charAt(i) == 'e')
+		{
+			i++;
+			if(i < end && (rOutput.charAt(i) == '+' || rOutput.charAt(i) == '-'))
+				i++;
+			digitsStart = i;
+			while(i < end && Character.isDigit(rOutput.charAt(i)))
+				i++;
+			if(i == digitsStart)
+				return false;
+		}
+
+		return i == end;
+	}
+
+	/**
+	 * Saves a number found in the output
+	 * @param val Value to save
+	 */
+	private void addDouble(double val)
+	{
+		if(doubleCount == doubles.length)
+		{
+			double[] bigger = new double[doubles.length * 2];
+			System.arraycopy(doubles, 0, bigger, 0, doubleCount);
+			doubles = bigger;
+		}
+
+		doubles[doubleCount++] = val;
+	}
+
+	/**
+	 * Saves a boolean found in the output
+	 * @param val Value to save
+	 */
+	private void addBoolean(boolean val)
+	{
+		if(booleanCount == booleans.length)
+		{
+			boolean[] bigger = new boolean[booleans.length * 2];
+			System.arraycopy(booleans, 0, bigger, 0, booleanCount);
+			booleans = bigger;
+		}
+
+		booleans[booleanCount++] = val;
+	}
+
+	/**
+	 * Determines what sort of vector the output most likely held. Quoted
+	 * strings win out over numbers, which win out over booleans
+	 * @return Type of vector found
+	 */
+	VectorType getType()
+	{
+		if(!strings.isEmpty())
+			return VectorType.STRING;
+		else if(doubleCount > 0)
+			return VectorType.NUMERIC;
+		else if(booleanCount > 0)
+			return VectorType.BOOLEAN;
+		else
+			return VectorType.NONE;
+	}
+
+	/**
+	 * Returns the numbers found in the output. An exception is thrown if
+	 * there were none
+	 * @return Numbers in the order they appeared
+	 */
+	double[] getDoubles()
+	{
+		if(doubleCount == 0)
+			throw new RProcessorParseException("The R result is not a vector of doubles");
+
+		double[] vals = new double[doubleCount];
+		System.arraycopy(doubles, 0, vals, 0, doubleCount);
+		return vals;
+	}
+
+	/**
+	 * Returns the quoted strings found in the output. An exception is thrown
+	 * if there were none
+	 * @return Strings in the order they appeared
+	 */
+	String[] getStrings()
+	{
+		if(strings.isEmpty())
+			throw new RProcessorParseException("The R result is not a vector of strings");
+
+		return strings.toArray(new String[strings.size()]);
+	}
+
+	/**
+	 * Returns the booleans found in the output. An exception is thrown if
+	 * there were none
+	 * @return Booleans in the order they appeared
+	 */
+	boolean[] getBooleans()
+	{
+		if(booleanCount == 0)
+			throw new RProcessorParseException("The R result is not a vector of booleans");
+
+		boolean[] vals = new boolean[booleanCount];
+		System.arraycopy(booleans, 0, vals, 0, booleanCount);
+		return vals;
+	}
+}
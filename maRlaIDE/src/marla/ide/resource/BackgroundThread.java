@@ -20,9 +20,16 @@
 package marla.ide.resource;
 
 import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayDeque;
 import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.swing.SwingUtilities;
 import marla.ide.gui.Domain;
+import marla.ide.problem.Problem;
+import marla.ide.resource.Configuration.ConfigType;
 
 /**
  * The thread which continually checks for background tasks that are in need
@@ -41,7 +48,28 @@ public class BackgroundThread extends Thread
 	public boolean loading = false;
 	/** If the thread is already in a save operation, a second save operation
 	 * may not be called on it until the first finishes.*/
-	public boolean saving = false;
+	public volatile boolean saving = false;
+	/** Seconds the problem must go unchanged before it is saved automatically,
+	 * 0 if automatic saving is disabled */
+	private static int autoSaveDelay = 5;
+	/** A problem that keeps changing is still saved once its oldest unsaved change
+	 * is this many autosave delays old */
+	private static final int MAX_AUTOSAVE_DELAYS = 6;
+	/** Writes copies of the problem to disk, away from both this thread and the event thread */
+	private final ExecutorService saveWriter = Executors.newSingleThreadExecutor(new ThreadFactory()
+	{
+		@Override
+		public Thread newThread(Runnable r)
+		{
+			Thread t = new Thread(r, "Autosave");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	/** True if a save has been asked for, regardless of how recently the problem changed */
+	private volatile boolean saveRequested = false;
+	/** Change count of the last problem version that failed to save, so it isn't retried until changed again */
+	private long failedChangeCount = -1;
 	/** Delay before checking if a save and/or logger write is needed */
 	private final long DELAY = 500;
 	/** The next time (system clock in ms) that the logger will be flushed */
@@ -87,6 +115,30 @@ public class BackgroundThread extends Thread
 		statusIsVisible = false;
 	}
 
+	/**
+	 * Sets how long the problem must go unchanged before it is saved automatically
+	 * @param newDelay Delay in seconds, 0 to disable automatic saving
+	 * @return Previously set delay
+	 */
+	public static int setAutoSaveDelay(int newDelay)
+	{
+		if(newDelay < 0)
+			throw new ConfigurationException("Autosave delay may not be negative", ConfigType.AutoSaveDelay);
+
+		int oldDelay = autoSaveDelay;
+		autoSaveDelay = newDelay;
+		return oldDelay;
+	}
+
+	/**
+	 * Returns how long the problem must go unchanged before it is saved automatically
+	 * @return Delay in seconds, 0 if automatic saving is disabled
+	 */
+	public static int getAutoSaveDelay()
+	{
+		return autoSaveDelay;
+	}
+
 	/**
 	 * Returns the check delay time in milliseconds.
 	 *
@@ -163,21 +215,123 @@ public class BackgroundThread extends Thread
 				// Next time to check for a flush if needed
 				nextLoggerUpdate = currTime + 1000;
 			}
+
+			// Save the problem in the background if it has settled down
+			if (!saving && (saveRequested || autoSaveDelay > 0))
+			{
+				autoSave(currTime);
+			}
 		}
 	}
 
 	/**
-	 * Calls the respective save methods if changes have been made.
+	 * Asks for the problem to be saved in the background the next time this
+	 * thread checks, if changes have been made. Returns immediately.
+	 */
+	public void save()
+	{
+		saveRequested = true;
+	}
+
+	/**
+	 * Saves the problem if it has changes and either it has gone unchanged for the
+	 * autosave delay, it has had unsaved changes for too long, or a save was requested.
+	 * A copy of the problem is taken on the event thread, where all changes are made,
+	 * and written on the autosave thread. The problem is only marked saved if it
+	 * hasn't changed again by the time the write finishes
+	 *
+	 * @param currTime Current time (system clock in ms)
 	 */
-	public synchronized void save()
+	private void autoSave(final long currTime)
 	{
-		if (domain.getProblem () != null)
+		final Problem[] toSave = new Problem[2];
+		try
 		{
-			if (domain.getProblem ().isChanged ())
+			SwingUtilities.invokeAndWait(new Runnable()
 			{
-				domain.save ();
-			}
+				@Override
+				public void run()
+				{
+					Problem prob = domain.getProblem();
+					if (prob == null || !prob.isChanged() || prob.getFileName() == null || !domain.isEditing())
+					{
+						saveRequested = false;
+						return;
+					}
+
+					// Already failed on exactly this version
+					if (!saveRequested && prob.getChangeCount() == failedChangeCount)
+						return;
+
+					long delay = autoSaveDelay * 1000L;
+					if (saveRequested
+							|| (delay > 0 && currTime - prob.getLastChangeTime() >= delay)
+							|| (delay > 0 && currTime - prob.getFirstUnsavedTime() >= delay * MAX_AUTOSAVE_DELAYS))
+					{
+						toSave[0] = prob;
+						toSave[1] = prob.clone();
+					}
+				}
+			});
 		}
+		catch (InterruptedException ex)
+		{
+			return;
+		}
+		catch (InvocationTargetException ex)
+		{
+			Domain.logger.add(ex.getCause());
+			return;
+		}
+
+		if (toSave[0] == null)
+			return;
+
+		saving = true;
+		saveRequested = false;
+
+		final Problem original = toSave[0];
+		final Problem copy = toSave[1];
+		saveWriter.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				RuntimeException error = null;
+				try
+				{
+					copy.saveCopy();
+				}
+				catch (RuntimeException ex)
+				{
+					error = ex;
+				}
+
+				// Report back on the event thread, where the problem is changed
+				final RuntimeException saveError = error;
+				SwingUtilities.invokeLater(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						if (saveError == null)
+						{
+							// The problem may have been closed or replaced since
+							if (domain.getProblem() == original)
+								original.markSaved(copy.getChangeCount());
+						}
+						else
+						{
+							Domain.logger.add(saveError);
+							addStatus("Unable to save " + copy.getFileName());
+							failedChangeCount = copy.getChangeCount();
+						}
+
+						saving = false;
+					}
+				});
+			}
+		});
 	}
 
 	/**
@@ -39,6 +39,7 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import marla.ide.latex.LatexExporter;
+import marla.ide.operation.OperationResultCache;
 import marla.ide.operation.OperationXMLException;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.RegexFileFilter;
@@ -53,6 +54,7 @@ import marla.ide.operation.OperationXML;
 import marla.ide.problem.InternalMarlaException;
 import marla.ide.problem.Problem;
 import marla.ide.r.RProcessor;
+import marla.ide.r.RProcessorPool;
 import marla.ide.r.RProcessor.RecordMode;
 import marla.ide.r.RProcessorException;
 
@@ -97,7 +99,7 @@ public class Configuration
 			DebugMode, FirstRun,
 			BrowseLocation,
 			WindowX, WindowY, WindowHeight, WindowWidth,
-			PdfTex, R, PrimaryOpsXML, UserOpsXML, TexTemplate,
+			PdfTex, R, RPoolSize, RTimeout, RPackageRepository, ResultCache, ResultCacheMemory, AutoSaveDelay, PrimaryOpsXML, UserOpsXML, TexTemplate,
 			UserName, ClassShort, ClassLong,
 			MinLineWidth, LineSpacing,
 			SendErrorReports, ReportWithProblem, ErrorServer
@@ -268,6 +270,24 @@ public class Configuration
 			case R:
 				return RProcessor.getRLocation();
 
+			case RPoolSize:
+				return RProcessorPool.getMaxSize();
+
+			case RTimeout:
+				return RProcessor.getDefaultTimeout();
+
+			case RPackageRepository:
+				return RProcessor.getPackageRepository();
+
+			case ResultCache:
+				return OperationResultCache.getCacheDirectory();
+
+			case ResultCacheMemory:
+				return OperationResultCache.getMemoryLimit();
+
+			case AutoSaveDelay:
+				return BackgroundThread.getAutoSaveDelay();
+
 			case DebugMode:
 				return Domain.isDebugMode();
 				
@@ -372,6 +392,42 @@ public class Configuration
 				previous = RProcessor.setRLocation(val.toString());
 				break;
 
+			case RPoolSize:
+				if(val instanceof Integer)
+					previous = RProcessorPool.setMaxSize((Integer)val);
+				else
+					previous = RProcessorPool.setMaxSize(Integer.parseInt(val.toString()));
+				break;
+
+			case RTimeout:
+				if(val instanceof Integer)
+					previous = RProcessor.setDefaultTimeout((Integer)val);
+				else
+					previous = RProcessor.setDefaultTimeout(Integer.parseInt(val.toString()));
+				break;
+
+			case RPackageRepository:
+				previous = RProcessor.setPackageRepository(val.toString());
+				break;
+
+			case ResultCache:
+				previous = OperationResultCache.setCacheDirectory(val.toString());
+				break;
+
+			case ResultCacheMemory:
+				if(val instanceof Integer)
+					previous = OperationResultCache.setMemoryLimit((Integer)val);
+				else
+					previous = OperationResultCache.setMemoryLimit(Integer.parseInt(val.toString()));
+				break;
+
+			case AutoSaveDelay:
+				if(val instanceof Integer)
+					previous = BackgroundThread.setAutoSaveDelay((Integer)val);
+				else
+					previous = BackgroundThread.setAutoSaveDelay(Integer.parseInt(val.toString()));
+				break;
+
 			case DebugMode:
 				Boolean mode = true;
 				if(val instanceof Boolean)
@@ -710,6 +766,38 @@ public class Configuration
 					success = true;
 					break;
 
+				case RPoolSize:
+					// Processes are only started when needed, so allowing
+					// one per core costs nothing until they're used
+					set(setting, Runtime.getRuntime().availableProcessors());
+					success = true;
+					break;
+
+				case RTimeout:
+					set(setting, 300);
+					success = true;
+					break;
+
+				case RPackageRepository:
+					set(setting, "http://cran.r-project.org");
+					success = true;
+					break;
+
+				case ResultCache:
+					set(setting, System.getProperty("user.home") + "/.marla/cache");
+					success = true;
+					break;
+
+				case ResultCacheMemory:
+					set(setting, 64);
+					success = true;
+					break;
+
+				case AutoSaveDelay:
+					set(setting, 5);
+					success = true;
+					break;
+
 				case SendErrorReports:
 				case ReportWithProblem:
 					set(setting, true);
@@ -1159,6 +1247,24 @@ public class Configuration
 			case R:
 				return "R path";
 
+			case RPoolSize:
+				return "Maximum R processes for operations";
+
+			case RTimeout:
+				return "R command timeout (seconds, 0 for none)";
+
+			case RPackageRepository:
+				return "R package repository (URL or directory, empty to never install)";
+
+			case ResultCache:
+				return "Computation result cache directory";
+
+			case ResultCacheMemory:
+				return "Computation result memory limit (MB)";
+
+			case AutoSaveDelay:
+				return "Autosave delay (seconds, 0 to disable)";
+
 			case TexTemplate:
 				return "LaTeX export template path";
 
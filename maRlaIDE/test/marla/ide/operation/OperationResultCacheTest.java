@@ -0,0 +1,130 @@
+/*
+ * The maRla Project - Graphical problem solver for statistics and probability problems.
+ * Copyright (C) 2010 Cedarville University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package marla.ide.operation;
+
+import java.io.File;
+import marla.ide.problem.DataColumn;
+import marla.ide.problem.DataSet;
+import marla.ide.problem.DataColumn.DataMode;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Ryan Morehart
+ */
+public class OperationResultCacheTest
+{
+	private String oldDir = null;
+	private File cacheDir = null;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		cacheDir = File.createTempFile("cache", "");
+		cacheDir.delete();
+		oldDir = OperationResultCache.setCacheDirectory(cacheDir.getPath());
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		OperationResultCache.clear();
+		OperationResultCache.setCacheDirectory(oldDir);
+		cacheDir.delete();
+	}
+
+	@Test
+	public void testStoreAndLoad() throws Exception
+	{
+		DataSet ds = new DataSet("Cache Test");
+		DataColumn nums = ds.addColumn("nums");
+		nums.addAll(new double[] {1.5, -2, Double.NaN});
+		DataColumn strs = ds.addColumn("strs");
+		strs.setMode(DataMode.STRING);
+		strs.add("a");
+		strs.add("b\nc");
+
+		OperationResultCache.store("abc", ds.getColumns(), "x <- 5", null);
+
+		OperationResultCache.Result result = OperationResultCache.load("abc");
+		assertNotNull(result);
+		assertEquals("x <- 5", result.record);
+		assertNull(result.plot);
+		assertEquals(2, result.names.size());
+		assertEquals("nums", result.names.get(0));
+		assertEquals(DataMode.NUMERIC, result.modes.get(0));
+		assertArrayEquals(new double[] {1.5, -2, Double.NaN}, (double[])result.values.get(0), 0);
+		assertEquals(DataMode.STRING, result.modes.get(1));
+		assertArrayEquals(new String[] {"a", "b\nc"}, (String[])result.values.get(1));
+	}
+
+	@Test
+	public void testMissing() throws Exception
+	{
+		assertNull(OperationResultCache.load("notthere"));
+	}
+
+	@Test
+	public void testTrim() throws Exception
+	{
+		DataSet ds = new DataSet("Cache Test");
+		ds.addColumn("nums").addAll(new double[1000]);
+
+		// Only look at what's on disk
+		int oldLimit = OperationResultCache.setMemoryLimit(0);
+		long oldSize = OperationResultCache.setMaxCacheSize(10000);
+		try
+		{
+			OperationResultCache.store("first", ds.getColumns(), "", null);
+			new File(cacheDir, "first.result").setLastModified(System.currentTimeMillis() - 10000);
+			OperationResultCache.store("second", ds.getColumns(), "", null);
+
+			assertNull(OperationResultCache.load("first"));
+			assertNotNull(OperationResultCache.load("second"));
+		}
+		finally
+		{
+			OperationResultCache.setMaxCacheSize(oldSize);
+			OperationResultCache.setMemoryLimit(oldLimit);
+		}
+	}
+
+	@Test
+	public void testMemoryOnly() throws Exception
+	{
+		DataSet ds = new DataSet("Cache Test");
+		ds.addColumn("nums").addAll(new double[100000]);
+
+		OperationResultCache.setCacheDirectory("");
+		int oldLimit = OperationResultCache.setMemoryLimit(1);
+		try
+		{
+			OperationResultCache.store("first", ds.getColumns(), "", null);
+			assertNotNull(OperationResultCache.load("first"));
+
+			// Both don't fit, so the older is dropped
+			OperationResultCache.store("second", ds.getColumns(), "", null);
+			assertNull(OperationResultCache.load("first"));
+			assertNotNull(OperationResultCache.load("second"));
+		}
+		finally
+		{
+			OperationResultCache.setMemoryLimit(oldLimit);
+		}
+	}
+}
@@ -24,6 +24,7 @@ import marla.ide.problem.DataSet;
 import marla.ide.problem.DataSetTest;
 import marla.ide.problem.MarlaException;
 import marla.ide.r.RProcessor;
+import marla.ide.r.RProcessorPool;
 import static org.junit.Assert.*;
 
 /**
@@ -127,6 +128,64 @@ public class OperationTest
 		}
 	}
 
+	@Test
+	public void testColumnChangeOnlyDirtiesUsers() throws Exception
+	{
+		Operation op2 = Operation.createOperation(opName);
+		op1.addOperation(op2);
+		op2.checkCache();
+		assertFalse(op1.isDirty());
+		assertFalse(op2.isDirty());
+
+		// NOP doesn't use any columns, so changing one shouldn't matter
+		ds1.getColumn(0).add(42);
+		assertEquals(op1.getUsedColumns() == null, op1.isDirty());
+		op2.checkCache();
+
+		// Recomputing the parent to the same result leaves the child clean
+		op1.markDirty();
+		assertTrue(op2.isDirty());
+		op2.checkCache();
+		assertFalse(op1.isDirty());
+		assertFalse(op2.isDirty());
+	}
+
+	@Test
+	public void testUncachedOperation() throws Exception
+	{
+		// Random results must never be shared or reused
+		Operation op2 = Operation.createOperation("rnorm");
+		ds1.addOperation(op2);
+
+		assertNull(OperationResultCache.getKey(op2));
+	}
+
+	@Test
+	public void testScheduler() throws Exception
+	{
+		if(op1.isInfoUnanswered())
+			op1.fakeFillRequiredInfo();
+
+		Operation op2 = Operation.createOperation(opName);
+		Operation op3 = Operation.createOperation(opName);
+		op1.addOperation(op2);
+		op1.addOperation(op3);
+
+		int oldSize = RProcessorPool.setMaxSize(2);
+		try
+		{
+			OperationScheduler.recompute(ds1);
+		}
+		finally
+		{
+			RProcessorPool.setMaxSize(oldSize);
+		}
+
+		assertFalse(op1.isDirty());
+		assertFalse(op2.isDirty());
+		assertFalse(op3.isDirty());
+	}
+
 	@Test
 	public void testInfo() throws Exception
 	{
@@ -177,6 +177,63 @@ public class DataColumnTest
 		assertEquals(0, testDC1.size());
 	}
 
+	@Test
+	public void testAddAllDoubles()
+	{
+		DataColumn testDC1 = createDataColumn(0);
+		testDC1.addAll(new double[] {1.5, 2.5, 3.5});
+		assertEquals(3, testDC1.size());
+		assertEquals(2.5D, testDC1.get(1));
+		assertEquals(3.5, testDC1.getDouble(2), 0);
+
+		testDC1.setMode(DataColumn.DataMode.STRING);
+		assertEquals("1.5", testDC1.get(0));
+	}
+
+	@Test
+	public void testMixedValues()
+	{
+		DataColumn testDC1 = createDataColumn(0);
+		testDC1.add(1.0);
+		testDC1.add("abc");
+		assertEquals(2, testDC1.size());
+		assertEquals(1.0, testDC1.getDouble(0), 0);
+		assertEquals(DataColumn.DataMode.STRING, testDC1.autoDetectMode());
+		assertEquals("abc", testDC1.get(1));
+	}
+
+	@Test
+	public void testEqualsDifferentStorage()
+	{
+		DataColumn testDC1 = createDataColumn(0);
+		testDC1.addAll(new double[] {0, 1, 2});
+		DataColumn testDC2 = createDataColumn(3);
+		assertEquals(testDC1, testDC2);
+		assertEquals(testDC1.hashCode(), testDC2.hashCode());
+	}
+
+	@Test
+	public void testEncodedStrings()
+	{
+		DataColumn testDC1 = createDataColumn(0);
+		testDC1.setMode(DataColumn.DataMode.STRING);
+		testDC1.add("control");
+		testDC1.add("treatment");
+		testDC1.add("control");
+		assertArrayEquals(new String[] {"control", "treatment"}, testDC1.getDictionary());
+		assertArrayEquals(new int[] {0, 1, 0}, testDC1.getCodes());
+		assertEquals(2, testDC1.lastIndexOf("control"));
+
+		testDC1.set(1, "control");
+		assertEquals("control", testDC1.get(1));
+		assertEquals(-1, testDC1.indexOf("treatment"));
+
+		// Other values drop the encoding
+		testDC1.add(5.0);
+		assertNull(testDC1.getDictionary());
+		assertEquals("5.0", testDC1.get(3));
+	}
+
 	@Test
 	public void testCopy()
 	{
@@ -184,4 +241,28 @@ public class DataColumnTest
 		DataColumn testDC2 = new DataColumn(null, testDC1);
 		assertEquals(testDC1, testDC2);
 	}
+
+	@Test
+	public void testCopyIndependent()
+	{
+		DataColumn testDC1 = createDataColumn(50);
+		DataColumn testDC2 = new DataColumn(null, testDC1);
+
+		// Changes to either side are not seen by the other
+		testDC1.set(0, 100.0);
+		testDC2.add(50.0);
+		assertEquals(100.0, testDC1.get(0));
+		assertEquals(0.0, testDC2.get(0));
+		assertEquals(50, testDC1.size());
+		assertEquals(51, testDC2.size());
+
+		// Including encoded strings
+		DataColumn testDC3 = createDataColumn(0);
+		testDC3.setMode(DataColumn.DataMode.STRING);
+		testDC3.add("control");
+		DataColumn testDC4 = new DataColumn(null, testDC3);
+		testDC4.set(0, "treatment");
+		assertEquals("control", testDC3.get(0));
+		assertArrayEquals(new String[] {"control"}, testDC3.getDictionary());
+	}
 }
@@ -17,6 +17,8 @@
  */
 package marla.ide.problem;
 
+import java.io.File;
+import java.io.FileWriter;
 import marla.ide.operation.Operation;
 import java.util.List;
 import org.junit.*;
@@ -156,6 +158,91 @@ public class DataSetTest
 		assertEquals(testDS1, importedDS);
 	}
 
+	@Test
+	public void testImportQuotedFile() throws Exception
+	{
+		File csv = File.createTempFile("import", ".csv");
+		csv.deleteOnExit();
+
+		FileWriter out = new FileWriter(csv);
+		out.write("\"Name\"; Value ;'Mixed'\r\n");
+		out.write("\"Smith, John\";1.5;007\r\n");
+		out.write("\"Says \"\"hi\"\"\"; 2 ;A12\n");
+		out.write("\"Two\nLines\";;3\n");
+		out.close();
+
+		DataSet ds = DataSet.importFile(csv.getPath());
+		assertEquals(3, ds.getColumnCount());
+		assertEquals("Name", ds.getColumn(0).getName());
+		assertEquals("Value", ds.getColumn(1).getName());
+		assertEquals("Mixed", ds.getColumn(2).getName());
+
+		DataColumn names = ds.getColumn(0);
+		assertTrue(names.isString());
+		assertEquals(3, names.size());
+		assertEquals("Smith, John", names.get(0));
+		assertEquals("Says \"hi\"", names.get(1));
+		assertEquals("Two\nLines", names.get(2));
+
+		// Empty cells are skipped
+		DataColumn values = ds.getColumn(1);
+		assertTrue(values.isNumeric());
+		assertEquals(2, values.size());
+		assertEquals(2.0, values.getDouble(1), 0);
+
+		// Text found after numbers keeps the numbers as written
+		DataColumn mixed = ds.getColumn(2);
+		assertTrue(mixed.isString());
+		assertEquals("007", mixed.get(0));
+		assertEquals("A12", mixed.get(1));
+		assertEquals("3", mixed.get(2));
+	}
+
+	@Test
+	public void testImportParallel() throws Exception
+	{
+		File csv = File.createTempFile("import", ".csv");
+		csv.deleteOnExit();
+
+		FileWriter out = new FileWriter(csv);
+		out.write("x;\"y\";z\n");
+		for(int i = 0; i < 5000; i++)
+		{
+			out.write(i + ";\"name " + (i % 7) + "\";" + (i * 0.5));
+			if(i == 4000)
+				out.write("x");
+			out.write("\n");
+		}
+		out.close();
+
+		DataSet sequential = DataSet.importFile(csv.getPath());
+
+		long oldThreshold = CsvImporter.setParallelThreshold(0);
+		try
+		{
+			DataSet parallel = DataSet.importFile(csv.getPath());
+			assertEquals(sequential, parallel);
+			assertTrue(parallel.getColumn(0).isNumeric());
+			assertTrue(parallel.getColumn(1).isString());
+			assertTrue(parallel.getColumn(2).isString());
+			assertEquals("2.5", parallel.getColumn(2).get(5));
+			assertEquals("2000.0x", parallel.getColumn(2).get(4000));
+
+			// Quoted line breaks force a sequential read
+			out = new FileWriter(csv);
+			out.write("a,b\n1,\"two\nlines\"\n2,three\n");
+			out.close();
+
+			DataSet quoted = DataSet.importFile(csv.getPath());
+			assertEquals(2, quoted.getColumn(1).size());
+			assertEquals("two\nlines", quoted.getColumn(1).get(0));
+		}
+		finally
+		{
+			CsvImporter.setParallelThreshold(oldThreshold);
+		}
+	}
+
 	@Test
 	public void testFromRFrame() throws Exception
 	{
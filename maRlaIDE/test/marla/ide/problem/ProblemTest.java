@@ -287,4 +287,26 @@ public class ProblemTest
 
 		new File(tempFileName).delete();
 	}
+
+	@Test
+	public void testBinarySaveAndLoad() throws Exception
+	{
+		// Make a sort of complex Problem, with one column of strings
+		Problem prob = createProblem(2, 2, 3, 4);
+		DataColumn strCol = prob.getData(1).addColumn("strings");
+		strCol.setMode(DataColumn.DataMode.STRING);
+		for(int i = 0; i < 4; i++)
+			strCol.add("value " + (i % 2));
+
+		// The extension picks the binary format, which should still
+		// give back the same problem
+		String binaryFileName = tempFileName + ".marlab";
+		prob.setFileName(binaryFileName);
+		prob.save();
+
+		Problem readInProb = Problem.load(binaryFileName);
+		assertEquals(prob, readInProb);
+
+		new File(binaryFileName).delete();
+	}
 }
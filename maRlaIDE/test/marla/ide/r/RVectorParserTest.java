@@ -0,0 +1,94 @@
+/*
+ * The maRla Project - Graphical problem solver for statistics and probability problems.
+ * Copyright (C) 2010 Cedarville University
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package marla.ide.r;
+
+import marla.ide.r.RVectorParser.VectorType;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Ryan Morehart
+ */
+public class RVectorParserTest
+{
+	@Test
+	public void testDoubles()
+	{
+		RVectorParser parser = new RVectorParser("[1]  7.889 12.900 89.902\n[4]  2.492 -90.742 1e+05\n");
+		assertEquals(VectorType.NUMERIC, parser.getType());
+		assertArrayEquals(new double[] {7.889, 12.9, 89.902, 2.492, -90.742, 100000}, parser.getDoubles(), 0);
+	}
+
+	@Test
+	public void testSpecialDoubles()
+	{
+		double[] vals = new RVectorParser("[1]  Inf -Inf NaN   NA\n").getDoubles();
+		assertEquals(4, vals.length);
+		assertEquals(Double.POSITIVE_INFINITY, vals[0], 0);
+		assertEquals(Double.NEGATIVE_INFINITY, vals[1], 0);
+		assertTrue(Double.isNaN(vals[2]));
+		assertTrue(Double.isNaN(vals[3]));
+	}
+
+	@Test
+	public void testStrings()
+	{
+		RVectorParser parser = new RVectorParser("[1] \"test 1\" \"has 5 in it\" \"TRUE\"\n[4] \"quote \\\" here\"\n");
+		assertEquals(VectorType.STRING, parser.getType());
+		assertArrayEquals(new String[] {"test 1", "has 5 in it", "TRUE", "quote \" here"}, parser.getStrings());
+	}
+
+	@Test
+	public void testBooleans()
+	{
+		RVectorParser parser = new RVectorParser("[1]  FALSE TRUE\n[3]  TRUE\n");
+		assertEquals(VectorType.BOOLEAN, parser.getType());
+
+		boolean[] vals = parser.getBooleans();
+		assertEquals(3, vals.length);
+		assertFalse(vals[0]);
+		assertTrue(vals[1]);
+		assertTrue(vals[2]);
+	}
+
+	@Test
+	public void testNamedVector()
+	{
+		RVectorParser parser = new RVectorParser("   a    b \n 1.5  2.5 \n");
+		assertEquals(VectorType.NUMERIC, parser.getType());
+		assertArrayEquals(new double[] {1.5, 2.5}, parser.getDoubles(), 0);
+	}
+
+	@Test
+	public void testNoValues()
+	{
+		assertEquals(VectorType.NONE, new RVectorParser("numeric(0)\n").getType());
+	}
+
+	@Test(expected=RProcessorParseException.class)
+	public void testDoublesFromStrings()
+	{
+		new RVectorParser("[1]  \"haha\"\n").getDoubles();
+	}
+
+	@Test(expected=RProcessorParseException.class)
+	public void testStringsFromDoubles()
+	{
+		new RVectorParser("[1]  7.902\n").getStrings();
+	}
+}